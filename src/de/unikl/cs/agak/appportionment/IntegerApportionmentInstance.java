@@ -0,0 +1,72 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment;
+
+import java.util.Arrays;
+
+/**
+ * An instance of the apportionment problem with integral vote counts, as real
+ * elections have. Algorithms can use the integrality to compare seat values
+ * exactly instead of up to {@link de.unikl.cs.agak.appportionment.util.FuzzyNumerics#EPSILON}.
+ *
+ * @see ApportionmentInstance
+ */
+public class IntegerApportionmentInstance {
+  /**
+   * The largest supported vote count, 2^53; up to here, vote counts are exact as <code>double</code>s.
+   */
+  public static final long MAX_VOTES = 1L << 53;
+
+  final public long[] votes; // TODO not safe
+  /**
+   * The house size.
+   */
+  final public int k;
+
+  /**
+   * @throws IllegalArgumentException if a vote count is not in <code>[1, {@link #MAX_VOTES}]</code>.
+   */
+  public IntegerApportionmentInstance(final long[] votes, final int k) {
+    for ( int i = 0; i < votes.length; i++ ) {
+      if ( votes[i] < 1 || votes[i] > MAX_VOTES ) {
+        throw new IllegalArgumentException("Got votes[" + i + "]=" + votes[i] + ", but need 1 <= votes <= " + MAX_VOTES);
+      }
+    }
+    this.votes = votes;
+    this.k = k;
+  }
+
+  /**
+   * @return The vote counts as <code>double</code>s; the conversion is exact.
+   */
+  public double[] doubleVotes() {
+    final double[] result = new double[votes.length];
+    for ( int i = 0; i < votes.length; i++ ) {
+      result[i] = votes[i];
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "IntegerInstance(" + System.getProperty("line.separator") +
+        "\tn=" + votes.length + "," + System.getProperty("line.separator") +
+        "\tvotes=" + Arrays.toString(votes) + "," + System.getProperty("line.separator") +
+        "\tk=" + k + System.getProperty("line.separator") +
+        ")";
+  }
+}
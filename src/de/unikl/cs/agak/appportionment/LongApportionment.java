@@ -0,0 +1,103 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment;
+
+
+import java.util.Arrays;
+
+import static de.unikl.cs.agak.appportionment.util.AssortedUtils.sum;
+
+/**
+ * Like {@link Apportionment}, but with seat counts that may exceed the range of
+ * <code>int</code>. Every party is tied for at most one seat, so tied seats
+ * remain <code>int</code>s.
+ */
+public final class LongApportionment {
+  /**
+   * The proportionality constant; each seat represents approximately this many votes.
+   */
+  public final double astar;
+  /**
+   * The number of seats per party we definitely assign.
+   */
+  public final long[] seats; // TODO not safe
+  /**
+   * Contains 1 for every party the <em>tied</em> for the last couple of seats.
+   * You can pick any <code>k - sum(seats)</code> of these and assign one seat each.
+   */
+  public final int[] tiedSeats; // TODO not safe
+  /**
+   * The number of seats we have apportioned for.
+   */
+  public final long k;
+
+  public LongApportionment(long k, long[] seats, int[] tiedSeats, double astar) {
+    assert k >= 0 && seats != null && tiedSeats != null && astar > 0;
+
+    this.k = k;
+    this.tiedSeats = tiedSeats;
+    this.astar = astar;
+    this.seats = seats;
+  }
+
+  /**
+   * @return The number of seats assigned for sure, i.e. without the tied ones.
+   */
+  public long assignedSeats() {
+    long sum = 0;
+    for ( final long s : seats ) {
+      sum += s;
+    }
+    return sum;
+  }
+
+  @Override
+  public String toString() {
+    return "LongApportionment(" + System.getProperty("line.separator") +
+        "\tseats=" + Arrays.toString(seats) + "," + System.getProperty("line.separator") +
+        "\ttiedSeats=" + Arrays.toString(tiedSeats) + "," + System.getProperty("line.separator") +
+        "\tastar=" + astar + System.getProperty("line.separator") +
+        "\tsum(seats)=" + assignedSeats() + System.getProperty("line.separator") +
+        "\tsum(tiedSeats)=" + sum(tiedSeats) + System.getProperty("line.separator") +
+        ')';
+  }
+
+  /**
+   * Two long apportionments are equal if they agree in house size, seats,
+   * ties and a*; unlike {@link Apportionment#equals(Object)}, a* is compared
+   * exactly, so that equality is consistent with {@link #hashCode()}.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if ( !(o instanceof LongApportionment) ) return false;
+    final LongApportionment other = (LongApportionment)o;
+    return this.k == other.k
+        && Double.doubleToLongBits(this.astar) == Double.doubleToLongBits(other.astar)
+        && Arrays.equals(this.seats, other.seats)
+        && Arrays.equals(this.tiedSeats, other.tiedSeats);
+  }
+
+  @Override
+  public int hashCode() {
+    final long astarBits = Double.doubleToLongBits(astar);
+    int result = (int)(k ^ (k >>> 32));
+    result = 31 * result + Arrays.hashCode(seats);
+    result = 31 * result + Arrays.hashCode(tiedSeats);
+    result = 31 * result + (int)(astarBits ^ (astarBits >>> 32));
+    return result;
+  }
+}
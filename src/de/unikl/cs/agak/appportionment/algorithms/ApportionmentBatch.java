@@ -0,0 +1,144 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Apportions many independent instances concurrently.
+ * <p/>
+ * Instances are handed to the executor largest first, so that big instances
+ * start early and do not hold up the end of the batch. Small instances are
+ * grouped into tasks of about <code>chunkSize</code> parties in total, so that
+ * the overhead per task does not dominate. One algorithm instance is shared by
+ * all tasks; all algorithms in this package are safe for concurrent use.
+ */
+public class ApportionmentBatch {
+  /**
+   * The number of parties per task used by the default constructor.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 15;
+
+  private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+
+  private final ApportionmentAlgorithm algorithm;
+  private final ExecutorService executor;
+  private final int chunkSize;
+
+  /**
+   * Uses {@link SandwichSelect} on a work-stealing pool with one thread per core.
+   */
+  public ApportionmentBatch() {
+    this(new SandwichSelect(), DEFAULT_POOL, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param algorithm The algorithm to apportion each instance with.
+   * @param executor  Executes the tasks; it is not shut down by this class.
+   * @param chunkSize Instances are grouped into tasks with about this many parties.
+   */
+  public ApportionmentBatch(final ApportionmentAlgorithm algorithm, final ExecutorService executor,
+                            final int chunkSize) {
+    assert algorithm != null && executor != null && chunkSize > 0
+        : "Illegal parameters algorithm=" + algorithm + ", executor=" + executor + ", chunkSize=" + chunkSize;
+    this.algorithm = algorithm;
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Apportions all given instances with the given method.
+   *
+   * @return The apportionments of the instances, in the same order.
+   * @throws IllegalArgumentException If the algorithm does not support the method.
+   */
+  public List<Apportionment> apportionAll(final List<? extends ApportionmentInstance> instances,
+                                          final DivisorMethod method) {
+    // Random access, also for linked lists
+    final ApportionmentInstance[] all = instances.toArray(new ApportionmentInstance[instances.size()]);
+    final int m = all.length;
+    final Apportionment[] results = new Apportionment[m];
+
+    // Largest instances first
+    final Integer[] order = new Integer[m];
+    for ( int i = 0; i < m; i++ ) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer i, final Integer j) {
+        return Integer.compare(all[j].votes.length, all[i].votes.length);
+      }
+    });
+
+    // Cut into tasks of about chunkSize parties; large instances form a task of their own.
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    int from = 0;
+    while ( from < m ) {
+      int to = from;
+      int parties = 0;
+      while ( to < m && parties < chunkSize ) {
+        parties += all[order[to]].votes.length;
+        to++;
+      }
+
+      final int taskFrom = from;
+      final int taskTo = to;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for ( int t = taskFrom; t < taskTo; t++ ) {
+            final int i = order[t];
+            results[i] = algorithm.apportion(all[i], method);
+          }
+          return null;
+        }
+      });
+      from = to;
+    }
+
+    try {
+      for ( final Future<Void> task : executor.invokeAll(tasks) ) {
+        task.get();
+      }
+    }
+    catch ( final ExecutionException e ) {
+      if ( e.getCause() instanceof RuntimeException ) {
+        throw (RuntimeException)e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for apportionments", e);
+    }
+
+    return Arrays.asList(results);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffers for {@link SandwichSelect#apportionInto}.
+ * Buffers grow as needed but never shrink, so after the first couple of calls
+ * on instances of similar size, apportioning does not allocate any more.
+ * <p/>
+ * The result of the last call is available via {@link #getSeats()},
+ * {@link #getTiedSeats()} and {@link #getAstar()}; it is overwritten by the next call.
+ * A workspace must not be used by multiple threads at the same time.
+ */
+public final class ApportionmentWorkspace {
+  private static final int[] NO_INTS = new int[0];
+
+  private int[] indices = NO_INTS;
+  private double[] candidates = new double[0];
+  private int[] seats = NO_INTS;
+  private int[] tiedSeats = NO_INTS;
+  private final int[] band = new int[3];
+  private boolean tieFree = false;
+
+  private int n = 0;
+  private int k = 0;
+  private double astar = Double.NaN;
+
+  public ApportionmentWorkspace() {
+  }
+
+  /**
+   * Creates a workspace with buffers large enough for instances with up to
+   * <code>n</code> parties and candidate sets of size up to <code>2n</code>.
+   * That covers linear methods; for other almost linear methods, candidate sets
+   * can have up to <code>ceil(2(1 + (betaU - betaL)/alpha) n)</code> elements,
+   * and the candidate buffer grows on first use.
+   */
+  public ApportionmentWorkspace(final int n) {
+    indices(n);
+    candidates(2 * n);
+    seats(n);
+  }
+
+  /**
+   * @return An index buffer with at least <code>n</code> entries.
+   */
+  int[] indices(final int n) {
+    if ( indices.length < n ) {
+      indices = new int[n];
+    }
+    return indices;
+  }
+
+  /**
+   * @return A candidate buffer with at least <code>size</code> entries.
+   */
+  double[] candidates(final int size) {
+    if ( candidates.length < size ) {
+      candidates = new double[Math.max(size, candidates.length + (candidates.length >> 1))];
+    }
+    return candidates;
+  }
+
+  /**
+   * @return A buffer for {@link de.unikl.cs.agak.appportionment.util.RankSelection.BandSelector}.
+   */
+  int[] band() {
+    return band;
+  }
+
+  /**
+   * Records whether a* is known to be attained by a single candidate only,
+   * in which case deriving seats need not look for ties.
+   */
+  void tieFree(final boolean tieFree) {
+    this.tieFree = tieFree;
+  }
+
+  boolean isTieFree() {
+    return tieFree;
+  }
+
+  /**
+   * Prepares the output buffers for an instance with <code>n</code> parties.
+   */
+  void seats(final int n) {
+    if ( seats.length < n ) {
+      seats = new int[n];
+      tiedSeats = new int[n];
+    }
+    this.n = n;
+  }
+
+  void result(final int k, final double astar) {
+    this.k = k;
+    this.astar = astar;
+  }
+
+  /**
+   * @return The number of parties in the last apportioned instance.
+   */
+  public int size() {
+    return n;
+  }
+
+  /**
+   * @return The seats of the last apportionment in the first {@link #size()} entries.
+   * @see Apportionment#seats
+   */
+  public int[] getSeats() {
+    return seats;
+  }
+
+  /**
+   * @return The tied seats of the last apportionment in the first {@link #size()} entries.
+   * @see Apportionment#tiedSeats
+   */
+  public int[] getTiedSeats() {
+    return tiedSeats;
+  }
+
+  /**
+   * @return The (reciprocal of the) proportionality constant of the last apportionment.
+   */
+  public double getAstar() {
+    return astar;
+  }
+
+  /**
+   * @return A copy of the last apportionment that is not affected by further
+   *         use of this workspace.
+   */
+  public Apportionment toApportionment() {
+    return new Apportionment(k, Arrays.copyOf(seats, n), Arrays.copyOf(tiedSeats, n), astar);
+  }
+}
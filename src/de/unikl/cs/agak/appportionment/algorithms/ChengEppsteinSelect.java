@@ -16,14 +16,10 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package de.unikl.cs.agak.appportionment.algorithms;
 
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
-import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
 import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
 import de.unikl.cs.agak.appportionment.util.RankSelection;
 
-import java.util.Collection;
-import java.util.LinkedList;
-
 import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyEquals;
 import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyFloor;
 
@@ -35,11 +31,29 @@ import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyFloor;
  * In: International Symposium on Algorithms and Computation (ISAAC) 2014. <br/>
  * Springer (2014)
  * </dir>
+ * <p/>
+ * Sequences are stored as parallel arrays of populations <code>v_i</code>,
+ * first elements <code>x_A = d(0)/v_i</code> and slopes <code>y_A = alpha/v_i</code>;
+ * shrinking the set of sequences compacts these arrays in place.
  *
  * @author Raphael Reitzig (reitzig@cs.uni-kl.de)
  */
 public class ChengEppsteinSelect extends SelectionBasedAlgorithm {
+    private final RankSelection.Selector selector;
 
+    /**
+     * Uses {@link RankSelection#FLOYD_RIVEST} for finding medians.
+     */
+    public ChengEppsteinSelect() {
+        this(RankSelection.FLOYD_RIVEST);
+    }
+
+    /**
+     * @param selector The selection algorithm to use for finding medians.
+     */
+    public ChengEppsteinSelect(final RankSelection.Selector selector) {
+        this.selector = selector;
+    }
 
     @Override
     double unitSize(final ApportionmentInstance instance, final DivisorMethod dm) {
@@ -50,113 +64,125 @@ public class ChengEppsteinSelect extends SelectionBasedAlgorithm {
       }
 
         // Initialize sequences
-        // TODO move to 𝒜, ξ? Seems to skrew with most IDEs, though.
-        Collection<Sequence> A = new LinkedList<>();
-        for (double v_i : instance.votes) {
-            A.add(new Sequence(v_i, (AlmostLinearDivisorMethod)dm));
-        }
+        final Sequences A = new Sequences(instance.votes, (LinearDivisorMethod)dm);
 
-        Collection<Sequence> C = findContributingSequences(A, instance.k);
-        double coarse = sInv(C, instance.k);
+        double coarse = findContributingSequences(A, instance.k);
 
-        if (r(coarse, A) >= instance.k) {
+        if (A.r(coarse) >= instance.k) {
             coarse = lowerRankCoarseSolution(A, instance.k, coarse);
         }
-        assert r(coarse, A) < instance.k;
+        assert A.r(coarse) < instance.k;
 
         return coarseToExact(A, instance.k, coarse);
     }
 
-    private Collection<Sequence> findContributingSequences(Collection<Sequence> A, int k) {
-        Collection<Sequence> C = new LinkedList<>();
-
-        while (A.size() > 0) {
+    /**
+     * Finds the set C of contributing sequences as per Algorithm 1 and
+     * returns <code>s^(-1)(k)</code> w.r.t. C.
+     */
+    private double findContributingSequences(final Sequences all, final int k) {
+        final Sequences A = all.copy();
+        // C is kept as (x_A, y_A) pairs
+        final double[] Cx = new double[A.size];
+        final double[] Cy = new double[A.size];
+        int Csize = 0;
+
+        while (A.size > 0) {
             // Compute median as per line 3
-            double[] x_As = new double[A.size()];
-            int i = 0;
-            for (Sequence a : A) {
-                x_As[i++] = a.x_A();
-            }
-            double x = RankSelection.median(x_As);
+            System.arraycopy(A.x, 0, A.buf, 0, A.size);
+            final double x = median(A.buf, A.size);
 
             // Lines 4-9
-            Collection<Sequence> Anew = new LinkedList<>();
+            int kept = 0;
             if (s(x, A) > k) {
-                for (Sequence a : A) {
-                    if (a.x_A() < x) {
-                        Anew.add(a);
+                for (int a = 0; a < A.size; a++) {
+                    if (A.x[a] < x) {
+                        A.move(a, kept++);
                     }
                 }
             } else {
-                for (Sequence a : A) {
-                    if (a.x_A() <= x) {
-                        C.add(a);
+                for (int a = 0; a < A.size; a++) {
+                    if (A.x[a] <= x) {
+                        Cx[Csize] = A.x[a];
+                        Cy[Csize] = A.y[a];
+                        Csize++;
                     } else { // a.x_A > x
-                        Anew.add(a);
+                        A.move(a, kept++);
                     }
                 }
             }
-            A = Anew;
+            A.size = kept;
         }
 
-        return C;
+        return sInv(Cx, Cy, Csize, k);
     }
 
-    private double lowerRankCoarseSolution(Collection<Sequence> A, int k, double coarse) {
-        assert r(coarse, A) >= k;
+    private double lowerRankCoarseSolution(final Sequences all, int k, final double coarse) {
+        assert all.r(coarse) >= k;
         assert k > 0;
 
+        final Sequences A = all.copy();
         double u = coarse;
-        final int n = A.size(); // TODO yea?
+        final int n = A.size; // TODO yea?
 
         while (true) {
             // Line 3
-            double[] L = L(u, A);
-            double x = RankSelection.median(L);
+            for (int a = 0; a < A.size; a++) {
+                A.val[a] = A.L(a, u);
+            }
+            System.arraycopy(A.val, 0, A.buf, 0, A.size);
+            final double x = median(A.buf, A.size);
 
             // Lines 4-12
-            if (r(x, A) >= k) {
+            final int r_x = A.r(x);
+            if (r_x >= k) {
                 u = x;
-            } else if (r(x, A) < k - n) {
+            } else if (r_x < k - n) {
                 // Prepare updates as per lines 7-9
-                Collection<Sequence> Anew = new LinkedList<>();
+                int kept = 0;
                 int sum = 0;
-                for (Sequence a : A) {
-                    if (a.L(u) <= x) {
+                for (int a = 0; a < A.size; a++) {
+                    if (A.val[a] <= x) {
                         // a in B
-                        sum += a.r(x);
+                        sum += A.r(a, x);
                     } else {
-                        Anew.add(a);
+                        A.move(a, kept++);
                     }
                 }
 
                 // Updates
                 k = k - sum;
-                A = Anew;
+                A.size = kept;
             } else {
-                assert r(x, A) < k;
+                assert r_x < k;
                 return x;
             }
         }
     }
 
-    private double coarseToExact(Collection<Sequence> A, int k, double coarse) {
-        assert r(coarse, A) < k;
+    private double coarseToExact(final Sequences all, int k, final double coarse) {
+        assert all.r(coarse) < k;
         assert k > 0;
 
+        final Sequences A = all.copy();
         double l = coarse;
         double u = Double.POSITIVE_INFINITY;
         int m = 0;
-        Double t = null;
+        double t = Double.NaN;
 
-        double[] G = G(l, A);
+        // A.val holds G(l) for all sequences in A
+        for (int a = 0; a < A.size; a++) {
+            A.val[a] = A.G(a, l);
+        }
         boolean singleValue;
+        int r_t = 0;
         do {
             // Line 4
-            double x = RankSelection.median(G);
+            System.arraycopy(A.val, 0, A.buf, 0, A.size);
+            final double x = median(A.buf, A.size);
 
             // Literal translation of lines 5-10
-            if (r(x, A) < k) {
+            if (A.r(x) < k) {
                 l = x;
             } else {
                 u = x;
@@ -164,25 +190,28 @@ public class ChengEppsteinSelect extends SelectionBasedAlgorithm {
             }
 
             // Prepare updates
-            Collection<Sequence> Anew = new LinkedList<>();
+            int kept = 0;
             int sum = 0;
             int countEqual = 0;
             boolean pickedEqual = false;
-            for (Sequence a : A) {
-                if ( fuzzyEquals(a.G(l), u)) {
+            for (int a = 0; a < A.size; a++) {
+                final double G_a = A.G(a, l);
+                if ( fuzzyEquals(G_a, u)) {
                     countEqual += 1; // NOT CLEAR; use A or Ã?
                     if (!pickedEqual) {
-                        Anew.add(a);
+                        A.move(a, kept);
+                        A.val[kept++] = G_a;
                         pickedEqual = true;
                     } else {
                         // a not in Anew
-                        sum += a.r(l);
+                        sum += A.r(a, l);
                     }
-                } else if (a.G(l) < u) {
-                    Anew.add(a);
+                } else if (G_a < u) {
+                    A.move(a, kept);
+                    A.val[kept++] = G_a;
                 } else {
                     // a not in Anew
-                    sum += a.r(l);
+                    sum += A.r(a, l);
                 }
             }
             //assert pickedEqual; // NOT CLEAR; is this required?
@@ -192,41 +221,38 @@ public class ChengEppsteinSelect extends SelectionBasedAlgorithm {
             if (countEqual >= 1) {
                 m += countEqual - 1;
             }
-            A = Anew;
+            A.size = kept;
             k = k - sum;
 
-            // Prepare loop condition
-            singleValue = true;
-            G = G(l, A);
-            Double check = null;
-            for (Double g : G) {
-                if (check == null) {
-                    check = g;
-                } else {
-                    if (!fuzzyEquals(g, check)) {
-                        singleValue = false;
-                        break;
-                    }
+            // Prepare loop condition; A.val already holds G(l) for the new A
+            singleValue = A.size > 0;
+            for (int a = 1; a < A.size; a++) {
+                if (!fuzzyEquals(A.val[a], A.val[0])) {
+                    singleValue = false;
+                    break;
                 }
             }
             if (singleValue) {
-                t = check;
+                t = A.val[0];
+                r_t = A.r(t);
             }
-
-            assert !singleValue || t != null;
-        } while (!(singleValue && (r(t, A) >= k || (fuzzyEquals(t, u) && r(t, A) >= k - m))));
+        } while (!(singleValue && (r_t >= k || (fuzzyEquals(t, u) && r_t >= k - m))));
         return t;
     }
 
+    private double median(final double[] a, final int size) {
+        return size == 1 ? a[0] : selector.select(a, size - 1, size / 2 - 1);
+    }
+
     /**
      * Computes s as per equation (2)
      */
-    private double s(double x, Collection<Sequence> A) {
+    private double s(final double x, final Sequences A) {
         double sum = 0;
 
-        for (Sequence a : A) {
-            if (x >= a.x_A()) {
-                sum += (x - a.x_A()) / a.y_A();
+        for (int a = 0; a < A.size; a++) {
+            if (x >= A.x[a]) {
+                sum += (x - A.x[a]) / A.y[a];
             }
         }
 
@@ -236,99 +262,108 @@ public class ChengEppsteinSelect extends SelectionBasedAlgorithm {
     /**
      * Computes s^(-1) as per equation (3)
      */
-    private double sInv(Collection<Sequence> C, int k) {
+    private double sInv(final double[] Cx, final double[] Cy, final int Csize, final int k) {
         double ySum = 0;
         double xySum = 0;
 
-        for (Sequence a : C) {
-            ySum += 1 / a.y_A();
-            xySum += a.x_A() / a.y_A();
+        for (int a = 0; a < Csize; a++) {
+            ySum += 1 / Cy[a];
+            xySum += Cx[a] / Cy[a];
         }
 
         return 1 / ySum * (k + xySum);
     }
 
-    /**
-     * Lifts Sequence.L to sets of sequences
-     */
-    private double[] L(double u, Collection<Sequence> A) {
-        double[] res = new double[A.size()];
-        int i = -1;
-        for (Sequence a : A) {
-            res[++i] = a.L(u);
-        }
-        return res;
-    }
 
     /**
-     * Lifts Sequence.G to sets of sequences
+     * Set of sequences of d_j/v_i, stored as parallel arrays.
+     * Only the first <code>size</code> entries are valid.
      */
-    private double[] G(double u, Collection<Sequence> A) {
-        double[] res = new double[A.size()];
-        int i = -1;
-        for (Sequence a : A) {
-            res[++i] = a.G(u);
+    private static final class Sequences {
+        private final LinearDivisorMethod dm;
+        final double[] v; // Populations
+        final double[] x; // x_A = d(0)/v_i
+        final double[] y; // y_A = alpha/v_i
+        final double[] val; // Per-sequence values of L resp. G
+        final double[] buf; // Scratch space for selection
+        int size;
+
+        Sequences(final double[] votes, final LinearDivisorMethod dm) {
+            this(dm, votes.length);
+            final double d0 = dm.d(0);
+            final double alpha = dm.getAlpha();
+            for (int i = 0; i < size; i++) {
+                v[i] = votes[i];
+                x[i] = d0 / votes[i];
+                y[i] = alpha / votes[i];
+            }
         }
-        return res;
-    }
 
-    /**
-     * Lifts Sequence.r to sets of sequences
-     */
-    private int r(double x, Collection<Sequence> A) {
-        int r = 0;
-        for (Sequence A_i : A) {
-            r += A_i.r(x);
+        private Sequences(final LinearDivisorMethod dm, final int n) {
+            this.dm = dm;
+            this.v = new double[n];
+            this.x = new double[n];
+            this.y = new double[n];
+            this.val = new double[n];
+            this.buf = new double[n];
+            this.size = n;
         }
-        return r;
-    }
-
 
-    /**
-     * Wraps a sequence of d_j/v_i for one i
-     */
-    private class Sequence {
-        private double v_i; // Population
-        private final AlmostLinearDivisorMethod dm;
+        Sequences copy() {
+            final Sequences c = new Sequences(dm, size);
+            System.arraycopy(v, 0, c.v, 0, size);
+            System.arraycopy(x, 0, c.x, 0, size);
+            System.arraycopy(y, 0, c.y, 0, size);
+            return c;
+        }
 
-        Sequence(double v_i, AlmostLinearDivisorMethod dm) {
-          this.v_i = v_i;
-          this.dm = dm;
+        /**
+         * Moves sequence <code>from</code> to position <code>to <= from</code>.
+         */
+        void move(final int from, final int to) {
+            v[to] = v[from];
+            x[to] = x[from];
+            y[to] = y[from];
         }
 
         // Stuff from paper; more or less verbatim. Hopefully equivalent.
 
-        double L(double u) {
-            if (u <= jth(0)) return Double.NEGATIVE_INFINITY;
-            int j = r(u) - 1;
-            return jth(j) < u ? jth(j) : jth(j - 1);
+        double L(final int a, final double u) {
+            if (u <= x[a]) return Double.NEGATIVE_INFINITY;
+            final int j = r(a, u) - 1;
+            final double jth = jth(a, j);
+            return jth < u ? jth : jth(a, j - 1);
         }
 
-        double G(double l) {
-            int j = r(l) - 1;
-            if (j == -1) return jth(0);
-            return jth(j) > l ? jth(j) : jth(j + 1);
+        double G(final int a, final double l) {
+            final int j = r(a, l) - 1;
+            if (j == -1) return x[a];
+            final double jth = jth(a, j);
+            return jth > l ? jth : jth(a, j + 1);
         }
 
-        int r(double x) {
-            if (x >= x_A()) {
-                return 1 + fuzzyFloor((x - x_A()) / y_A());
+        int r(final int a, final double x) {
+            if (x >= this.x[a]) {
+                return 1 + fuzzyFloor((x - this.x[a]) / y[a]);
             } else {
                 return 0;
             }
         }
 
-        double x_A() {
-            return dm.d(0) / v_i;
-        }
-
-        double y_A() {
-            return dm.getAlpha() / v_i;
+        /**
+         * Lifts r to the whole set
+         */
+        int r(final double x) {
+            int r = 0;
+            for (int a = 0; a < size; a++) {
+                r += r(a, x);
+            }
+            return r;
         }
 
-        double jth(int j) {
-	        if (j < 0) throw new IllegalArgumentException();
-            return dm.d(j) / v_i;
+        double jth(final int a, final int j) {
+            if (j < 0) throw new IllegalArgumentException();
+            return dm.d(j) / v[a];
         }
     }
 }
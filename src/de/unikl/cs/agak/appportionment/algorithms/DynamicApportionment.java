@@ -0,0 +1,512 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.util.DaryHeap;
+
+import java.util.Arrays;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.EPSILON;
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyEquals;
+
+/**
+ * A long-lived apportionment that is kept up to date while parties come and go,
+ * their weights change and the house size changes.
+ * <p/>
+ * We keep two indexed heaps over all parties: one with the value
+ * <code>d(s_i - 1) / v_i</code> of the last seat each party holds, and one
+ * with the value <code>d(s_i) / v_i</code> of the next seat it would get.
+ * Changed parties jump to the seat count their new weight implies for the
+ * current a*; then seats are added resp. removed one by one as in
+ * {@link PukelsheimPQ} until the house size is met again. Thus, every
+ * operation takes time <code>O(log n)</code> per changed party and per moved
+ * seat, plus time proportional to the number of tied parties;
+ * {@link #seats(int)} takes constant time.
+ * <p/>
+ * Parties are identified by the ids returned by {@link #addParty(double)};
+ * ids of removed parties are reused. Ties are reported as by
+ * {@link IterativeMethod#determineTies}. Instances of this class are not thread-safe.
+ */
+public class DynamicApportionment {
+  private static final byte NOT_TIED = 0;
+  private static final byte TIED_WITHOUT_SEAT = 1;
+  private static final byte TIED_WITH_SEAT = 2;
+
+  private final DivisorMethod dm;
+  private int k;
+  private int sumSeats = 0;
+  private int size = 0;
+
+  /**
+   * Weights by party id; 0 for unused ids.
+   */
+  private double[] votes;
+  /**
+   * One valid assignment, i.e. ties are resolved arbitrarily.
+   */
+  private int[] seats;
+  /**
+   * Max-heap on <code>d(seats[i] - 1) / votes[i]</code> over all parties with seats.
+   */
+  private final DaryHeap assigned;
+  /**
+   * Min-heap on <code>d(seats[i]) / votes[i]</code> over all parties.
+   */
+  private final DaryHeap next;
+
+  private byte[] tie;
+  private int[] ties;
+  private int tiesSize = 0;
+  private int[] buffer;
+
+  /**
+   * Parties whose seats or ties may have changed in the last operation;
+   * <code>touchedIn[i] == operation</code> iff party i is listed.
+   */
+  private int[] touched;
+  private int touchedSize = 0;
+  private int[] touchedIn;
+  private int operation = 0;
+
+  private int[] freeIds;
+  private int freeIdsSize = 0;
+
+  private double astar = Double.NaN;
+  private int steps = 0;
+
+  /**
+   * Creates an empty apportionment with house size <code>k</code>;
+   * seats are handed out as soon as parties are added.
+   */
+  public DynamicApportionment(final DivisorMethod dm, final int k) {
+    this(dm, k, 0);
+  }
+
+  /**
+   * Apportions <code>instance</code> with {@link PukelsheimPQ} to start with;
+   * party <code>i</code> of <code>instance</code> gets id <code>i</code>.
+   */
+  public DynamicApportionment(final ApportionmentInstance instance, final DivisorMethod dm) {
+    this(instance, dm, new PukelsheimPQ().apportion(instance, dm));
+  }
+
+  /**
+   * Starts from a known apportionment of <code>instance</code>;
+   * party <code>i</code> of <code>instance</code> gets id <code>i</code>.
+   *
+   * @param instance The instance <code>previous</code> has been computed for;
+   *                 its votes are copied.
+   * @param dm       The divisor method <code>previous</code> has been computed with.
+   * @param previous An apportionment for <code>instance</code>.
+   * @throws IllegalArgumentException if <code>previous</code> does not fit <code>instance</code>.
+   */
+  public DynamicApportionment(final ApportionmentInstance instance, final DivisorMethod dm,
+                              final Apportionment previous) {
+    this(dm, instance.k, instance.votes.length);
+    final int n = instance.votes.length;
+    if ( previous.seats.length != n || previous.tiedSeats.length != n || previous.k != instance.k ) {
+      throw new IllegalArgumentException("Apportionment does not belong to instance");
+    }
+
+    System.arraycopy(instance.votes, 0, votes, 0, n);
+    System.arraycopy(previous.seats, 0, seats, 0, n);
+    size = n;
+
+    // Resolve ties of the previous result arbitrarily
+    int missing = k;
+    for ( int i = 0; i < n; i++ ) {
+      checkWeight(votes[i]);
+      missing -= seats[i];
+    }
+    for ( int i = 0; i < n && missing > 0; i++ ) {
+      if ( previous.tiedSeats[i] > 0 ) {
+        seats[i]++;
+        missing--;
+      }
+    }
+    if ( missing != 0 ) {
+      throw new IllegalArgumentException("Apportionment does not assign " + k + " seats");
+    }
+    sumSeats = k;
+
+    for ( int i = 0; i < n; i++ ) {
+      if ( seats[i] > 0 ) {
+        assigned.addUnordered(i, dm.d(seats[i] - 1) / votes[i]);
+      }
+      next.addUnordered(i, dm.d(seats[i]) / votes[i]);
+    }
+    assigned.heapify();
+    next.heapify();
+
+    // Algorithms may report any a* between the last assigned and the first
+    // unassigned seat value; use the former, as the selection-based algorithms do.
+    updateAstar();
+  }
+
+  private DynamicApportionment(final DivisorMethod dm, final int k, final int capacity) {
+    checkHouseSize(k);
+    this.dm = dm;
+    this.k = k;
+    this.votes = new double[capacity];
+    this.seats = new int[capacity];
+    this.tie = new byte[capacity];
+    this.ties = new int[capacity];
+    this.buffer = new int[capacity];
+    this.touched = new int[capacity];
+    this.touchedIn = new int[capacity];
+    this.freeIds = new int[0];
+    this.assigned = new DaryHeap(capacity, true);
+    this.next = new DaryHeap(capacity, false);
+  }
+
+  /**
+   * Adds a party with the given weight and hands it its share of the seats.
+   *
+   * @return The id of the new party.
+   * @throws IllegalArgumentException if <code>weight</code> is not positive.
+   */
+  public int addParty(final double weight) {
+    checkWeight(weight);
+    startOperation();
+    final int i;
+    if ( freeIdsSize > 0 ) {
+      i = freeIds[--freeIdsSize];
+    }
+    else {
+      i = size + freeIdsSize;
+      if ( i == votes.length ) grow(Math.max(16, 2 * votes.length));
+    }
+    size++;
+
+    votes[i] = weight;
+    seats[i] = 0;
+    next.add(i, dm.d(0) / weight);
+    jump(i);
+    rebalance();
+    return i;
+  }
+
+  /**
+   * Removes the given party; its seats go to the remaining parties.
+   * Its id may be reused by later calls to {@link #addParty(double)}.
+   *
+   * @throws IllegalArgumentException if there is no party with this id.
+   */
+  public void removeParty(final int party) {
+    checkParty(party);
+    startOperation();
+    touch(party);
+    sumSeats -= seats[party];
+    seats[party] = 0;
+    votes[party] = 0;
+    if ( assigned.contains(party) ) assigned.remove(party);
+    next.remove(party);
+    size--;
+
+    if ( freeIdsSize == freeIds.length ) {
+      freeIds = Arrays.copyOf(freeIds, Math.max(16, 2 * freeIds.length));
+    }
+    freeIds[freeIdsSize++] = party;
+    rebalance();
+  }
+
+  /**
+   * Sets the weight of the given party and updates the apportionment accordingly.
+   *
+   * @throws IllegalArgumentException if there is no party with this id or
+   *                                  <code>weight</code> is not positive.
+   */
+  public void updateWeight(final int party, final double weight) {
+    checkParty(party);
+    checkWeight(weight);
+    startOperation();
+    votes[party] = weight;
+    jump(party);
+    rebalance();
+  }
+
+  /**
+   * Sets the weight of party <code>parties[j]</code> to <code>weights[j]</code>
+   * for all <code>j</code> and updates the apportionment once for all changes.
+   *
+   * @throws IllegalArgumentException if the arrays have different lengths, some
+   *                                  party does not exist or some weight is not positive.
+   */
+  public void updateWeights(final int[] parties, final double[] weights) {
+    if ( parties.length != weights.length ) {
+      throw new IllegalArgumentException("Got " + parties.length + " parties but " + weights.length + " weights");
+    }
+    for ( int j = 0; j < parties.length; j++ ) {
+      checkParty(parties[j]);
+      checkWeight(weights[j]);
+    }
+
+    startOperation();
+    for ( int j = 0; j < parties.length; j++ ) {
+      votes[parties[j]] = weights[j];
+      jump(parties[j]);
+    }
+    rebalance();
+  }
+
+  /**
+   * Changes the house size; this moves <code>|k - houseSize()|</code> seats.
+   *
+   * @throws IllegalArgumentException if <code>k</code> is negative.
+   */
+  public void setHouseSize(final int k) {
+    checkHouseSize(k);
+    startOperation();
+    this.k = k;
+    rebalance();
+  }
+
+  /**
+   * Gives party <code>i</code> the seats its weight implies for the current a*,
+   * so that all seats still have value at most a* and all next seats at least a*.
+   */
+  private void jump(final int i) {
+    final int s = Double.isNaN(astar) ? 0 : dm.dRound(votes[i] * astar) + 1;
+    sumSeats += s - seats[i];
+    seats[i] = s;
+    updateKeys(i);
+  }
+
+  /**
+   * Adds resp. removes seats until the house is full again (cf PukelsheimPQ).
+   */
+  private void rebalance() {
+    steps = 0;
+    while ( sumSeats < k && !next.isEmpty() ) {
+      final int i = next.top();
+      seats[i]++;
+      updateKeys(i);
+      sumSeats++;
+      steps++;
+    }
+    while ( sumSeats > k ) {
+      final int i = assigned.top();
+      seats[i]--;
+      updateKeys(i);
+      sumSeats--;
+      steps++;
+    }
+
+    updateAstar();
+  }
+
+  private void updateKeys(final int i) {
+    touch(i);
+    if ( seats[i] > 0 ) {
+      final double last = dm.d(seats[i] - 1) / votes[i];
+      if ( assigned.contains(i) ) assigned.update(i, last);
+      else assigned.add(i, last);
+    }
+    else if ( assigned.contains(i) ) {
+      assigned.remove(i);
+    }
+    next.update(i, dm.d(seats[i]) / votes[i]);
+  }
+
+  /**
+   * Sets a* to the value of the last assigned seat and finds all parties whose
+   * last or next seat has this value (cf {@link IterativeMethod#determineTies}).
+   */
+  private void updateAstar() {
+    for ( int t = 0; t < tiesSize; t++ ) {
+      tie[ties[t]] = NOT_TIED;
+      touch(ties[t]);
+    }
+    tiesSize = 0;
+
+    if ( assigned.isEmpty() ) {
+      astar = Double.NaN;
+      return;
+    }
+    astar = assigned.topKey();
+
+    int found = assigned.itemsBefore(astar - EPSILON, buffer);
+    for ( int t = 0; t < found; t++ ) {
+      final int i = buffer[t];
+      if ( fuzzyEquals(astar, assigned.key(i)) ) {
+        tie[i] = TIED_WITH_SEAT;
+        ties[tiesSize++] = i;
+        touch(i);
+      }
+    }
+    found = next.itemsBefore(astar + EPSILON, buffer);
+    for ( int t = 0; t < found; t++ ) {
+      final int i = buffer[t];
+      if ( tie[i] == NOT_TIED && fuzzyEquals(astar, next.key(i)) ) {
+        tie[i] = TIED_WITHOUT_SEAT;
+        ties[tiesSize++] = i;
+        touch(i);
+      }
+    }
+
+    if ( tiesSize == 1 ) {
+      // The only party with value a* gets the last seat; no tie.
+      tie[ties[0]] = NOT_TIED;
+      tiesSize = 0;
+    }
+  }
+
+  private void startOperation() {
+    touchedSize = 0;
+    if ( ++operation == 0 ) {
+      // Stamps wrapped around; start over
+      Arrays.fill(touchedIn, -1);
+      operation = 1;
+    }
+  }
+
+  private void touch(final int i) {
+    if ( touchedIn[i] != operation ) {
+      touchedIn[i] = operation;
+      touched[touchedSize++] = i;
+    }
+  }
+
+  private void grow(final int capacity) {
+    votes = Arrays.copyOf(votes, capacity);
+    seats = Arrays.copyOf(seats, capacity);
+    tie = Arrays.copyOf(tie, capacity);
+    ties = Arrays.copyOf(ties, capacity);
+    buffer = new int[capacity];
+    touched = Arrays.copyOf(touched, capacity);
+    touchedIn = Arrays.copyOf(touchedIn, capacity);
+    assigned.ensureCapacity(capacity);
+    next.ensureCapacity(capacity);
+  }
+
+  private void checkParty(final int party) {
+    if ( party < 0 || party >= votes.length || votes[party] == 0 ) {
+      throw new IllegalArgumentException("No party with id " + party);
+    }
+  }
+
+  private static void checkWeight(final double weight) {
+    if ( !(weight > 0) ) {
+      throw new IllegalArgumentException("Weights must be positive, got " + weight);
+    }
+  }
+
+  private static void checkHouseSize(final int k) {
+    if ( k < 0 ) {
+      throw new IllegalArgumentException("House size must be non-negative, got " + k);
+    }
+  }
+
+  /**
+   * @return The number of parties.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return An upper bound on all party ids in use.
+   */
+  public int capacity() {
+    return votes.length;
+  }
+
+  /**
+   * @return <code>true</code> iff there is a party with the given id.
+   */
+  public boolean contains(final int party) {
+    return party >= 0 && party < votes.length && votes[party] != 0;
+  }
+
+  public int houseSize() {
+    return k;
+  }
+
+  /**
+   * @return The current weight of the given party, 0 if there is none.
+   */
+  public double weight(final int party) {
+    return votes[party];
+  }
+
+  /**
+   * @return The number of seats the given party definitely gets,
+   *         0 if there is no such party.
+   * @see Apportionment#seats
+   */
+  public int seats(final int party) {
+    return tie[party] == TIED_WITH_SEAT ? seats[party] - 1 : seats[party];
+  }
+
+  /**
+   * @return 1 if the given party is tied for the last seats, 0 otherwise.
+   * @see Apportionment#tiedSeats
+   */
+  public int tiedSeats(final int party) {
+    return tie[party] == NOT_TIED ? 0 : 1;
+  }
+
+  /**
+   * @return The (reciprocal of the) proportionality constant of the current
+   *         apportionment, NaN if no seats are assigned.
+   */
+  public double astar() {
+    return astar;
+  }
+
+  /**
+   * @return The number of seats added or removed one by one during the last operation.
+   */
+  public int lastSteps() {
+    return steps;
+  }
+
+  /**
+   * Lists all parties whose {@link #seats(int)} or {@link #tiedSeats(int)} may
+   * have changed during the last operation; this includes a party removed by it.
+   * There may be parties in the list whose result did not actually change.
+   *
+   * @param out Buffer with at least {@link #capacity()} entries.
+   * @return The number of parties stored to the front of <code>out</code>.
+   */
+  public int lastTouched(final int[] out) {
+    System.arraycopy(touched, 0, out, 0, touchedSize);
+    return touchedSize;
+  }
+
+  /**
+   * @return A copy of the current apportionment, indexed by party id up to
+   *         {@link #capacity()}; unused ids have no seats.
+   * @throws IllegalStateException if the house cannot be filled since there are no parties.
+   */
+  public Apportionment toApportionment() {
+    if ( sumSeats != k ) {
+      throw new IllegalStateException("Cannot fill " + k + " seats without parties");
+    }
+    final int n = votes.length;
+    final int[] s = new int[n];
+    final int[] t = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      s[i] = seats(i);
+      t[i] = tiedSeats(i);
+    }
+    return new Apportionment(k, s, t, astar);
+  }
+}
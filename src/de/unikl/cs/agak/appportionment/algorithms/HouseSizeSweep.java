@@ -0,0 +1,142 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.util.DaryHeap;
+
+import java.util.Arrays;
+
+/**
+ * Steps through the apportionments for house sizes <code>k, k+1, k+2, ...</code>
+ * of a fixed instance, i.e. through the priority list of the divisor method.
+ * <p/>
+ * Divisor methods are house monotone, so going from house size <code>h</code> to
+ * <code>h+1</code> gives exactly one more seat to one party: the one whose next
+ * seat has the smallest value <code>d(s_i) / v_i</code>. We solve the start house
+ * size once and keep these values in a heap, so the sweep takes time
+ * <code>O(n + (k2 - k1) log n)</code> plus the time of the initial apportionment,
+ * and memory <code>O(n)</code> independent of the range.
+ * <p/>
+ * If several parties tie for a seat, they get their seats in arbitrary order;
+ * ties show as consecutive seats of (fuzzily) equal {@link #lastValue()}.
+ * Instances of this class are not thread-safe.
+ */
+public class HouseSizeSweep {
+  private final DivisorMethod dm;
+  private final double[] votes;
+  private final int[] seats;
+  private final DaryHeap next;
+  private int k;
+  private double lastValue;
+
+  /**
+   * Solves <code>instance</code> with {@link SandwichSelect}, or with
+   * {@link PukelsheimPQ} if the method is not almost linear.
+   */
+  public HouseSizeSweep(final ApportionmentInstance instance, final DivisorMethod dm) {
+    this(instance, dm, dm instanceof AlmostLinearDivisorMethod
+        ? new SandwichSelect()
+        : new PukelsheimPQ());
+  }
+
+  /**
+   * @param instance  The instance to start with; its house size is the first one of the sweep.
+   * @param algorithm Solves the instance to start with.
+   */
+  public HouseSizeSweep(final ApportionmentInstance instance, final DivisorMethod dm,
+                        final ApportionmentAlgorithm algorithm) {
+    final int n = instance.votes.length;
+    final Apportionment start = algorithm.apportion(instance, dm);
+
+    this.dm = dm;
+    this.votes = Arrays.copyOf(instance.votes, n);
+    this.seats = Arrays.copyOf(start.seats, n);
+    this.k = instance.k;
+    this.lastValue = start.astar;
+
+    // Hand out tied seats arbitrarily
+    int missing = k;
+    for ( int i = 0; i < n; i++ ) {
+      missing -= seats[i];
+    }
+    for ( int i = 0; i < n && missing > 0; i++ ) {
+      if ( start.tiedSeats[i] > 0 ) {
+        seats[i]++;
+        missing--;
+      }
+    }
+
+    this.next = new DaryHeap(n, false);
+    for ( int i = 0; i < n; i++ ) {
+      next.addUnordered(i, dm.d(seats[i]) / votes[i]);
+    }
+    next.heapify();
+  }
+
+  /**
+   * Increases the house size by one.
+   *
+   * @return The party that gets the new seat.
+   */
+  public int next() {
+    final int i = next.top();
+    lastValue = next.topKey();
+    seats[i]++;
+    next.updateTop(dm.d(seats[i]) / votes[i]);
+    k++;
+    return i;
+  }
+
+  /**
+   * Increases the house size by <code>len</code>, one by one, and stores the party
+   * that gets seat <code>houseSize() + 1 + j</code> to <code>parties[off + j]</code>.
+   * This is the priority list in compact form; house sizes are implicit.
+   */
+  public void next(final int[] parties, final int off, final int len) {
+    for ( int j = 0; j < len; j++ ) {
+      parties[off + j] = next();
+    }
+  }
+
+  /**
+   * @return The current house size.
+   */
+  public int houseSize() {
+    return k;
+  }
+
+  /**
+   * @return The number of seats of party <code>i</code> for the current house size,
+   *         with ties broken as by the sweep.
+   */
+  public int seats(final int i) {
+    return seats[i];
+  }
+
+  /**
+   * @return The value <code>d(s_i - 1) / v_i</code> of the last seat handed out, i.e. a*
+   *         for the current house size; for the start house size, a* as reported by the
+   *         algorithm.
+   */
+  public double lastValue() {
+    return lastValue;
+  }
+}
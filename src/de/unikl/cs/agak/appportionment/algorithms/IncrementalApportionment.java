@@ -0,0 +1,92 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+
+/**
+ * Maintains an apportionment under changes of few vote counts, e.g. after a
+ * recount in some districts, without recomputing it from scratch.
+ * <p/>
+ * Starting from a previous result, changed parties jump to the seat count
+ * their new votes imply for the old a*; then seats are added resp. removed
+ * one by one as in {@link PukelsheimPQ} until the house size is met again
+ * (cf {@link DynamicApportionment}). Thus, {@link #update(int[], double[])} takes time
+ * <code>O((c + s + t) log n)</code> for <code>c</code> changed parties,
+ * <code>s</code> moved seats and <code>t</code> tied parties; only
+ * construction and {@link #toApportionment()} take linear time.
+ * <p/>
+ * Results (including ties) are the same as those of the other algorithms
+ * on the changed instance. Instances of this class are not thread-safe.
+ */
+public class IncrementalApportionment extends DynamicApportionment {
+
+  /**
+   * @param instance The instance <code>previous</code> has been computed for;
+   *                 its votes are copied.
+   * @param dm       The divisor method <code>previous</code> has been computed with.
+   * @param previous An apportionment for <code>instance</code>.
+   * @throws IllegalArgumentException if <code>previous</code> does not fit <code>instance</code>.
+   */
+  public IncrementalApportionment(final ApportionmentInstance instance, final DivisorMethod dm,
+                                  final Apportionment previous) {
+    super(instance, dm, previous);
+  }
+
+  /**
+   * Computes an apportionment for <code>instance</code> with a few votes changed,
+   * starting from <code>previous</code>. Since this has to set up and copy out
+   * the complete state, it takes linear time; for repeated changes to the same
+   * instance, keep an instance of this class instead.
+   *
+   * @see #update(int[], double[])
+   */
+  public static Apportionment reapportion(final ApportionmentInstance instance, final DivisorMethod dm,
+                                          final Apportionment previous,
+                                          final int[] parties, final double[] newVotes) {
+    final IncrementalApportionment inc = new IncrementalApportionment(instance, dm, previous);
+    inc.update(parties, newVotes);
+    return inc.toApportionment();
+  }
+
+  /**
+   * Sets the votes of party <code>parties[j]</code> to <code>newVotes[j]</code>
+   * for all <code>j</code> and updates the apportionment accordingly.
+   *
+   * @throws IllegalArgumentException if the arrays have different lengths or
+   *                                  some vote count is not positive.
+   */
+  public void update(final int[] parties, final double[] newVotes) {
+    updateWeights(parties, newVotes);
+  }
+
+  /**
+   * Convenience version of {@link #update(int[], double[])} for a single party.
+   */
+  public void update(final int party, final double newVotes) {
+    updateWeight(party, newVotes);
+  }
+
+  /**
+   * @return The current votes of party <code>i</code>.
+   */
+  public double votes(final int i) {
+    return weight(i);
+  }
+}
@@ -18,6 +18,8 @@ package de.unikl.cs.agak.appportionment.algorithms;
 import de.unikl.cs.agak.appportionment.Apportionment;
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.LinearScans;
 
 /**
  * A naive implementation of divisor methods that assigns one seat after the other
@@ -41,23 +43,31 @@ public class IterativeDMLS extends IterativeMethod {
         final int[] seats = new int[n];
         int imin;
         int k = instance.k;
-        while (k > 1) {
-            // Find index with maximum value
-            imin = 0;
-            for (int i = 1; i < n; i++) {
-                if (values[i] < values[imin]) imin = i;
+        if (dm instanceof LinearDivisorMethod) {
+            // Affine kernel; keeps the loop free of calls to dm, which may be megamorphic
+            final double alpha = ((LinearDivisorMethod) dm).getAlpha();
+            final double beta = ((LinearDivisorMethod) dm).getBeta();
+            while (k > 1) {
+                imin = LinearScans.argMin(values, n);
+
+                seats[imin]++;
+                values[imin] = (alpha * seats[imin] + beta) / instance.votes[imin];
+                k--;
             }
+        }
+        else {
+            while (k > 1) {
+                // Find index with minimum value
+                imin = LinearScans.argMin(values, n);
 
-            seats[imin]++;
-            values[imin] = dm.d(seats[imin]) / instance.votes[imin];
-            k--;
+                seats[imin]++;
+                values[imin] = dm.d(seats[imin]) / instance.votes[imin];
+                k--;
+            }
         }
 
         // Find maximum for last seat
-        imin = 0;
-        for (int i = 1; i < n; i++) {
-            if (values[i] < values[imin]) imin = i;
-        }
+        imin = LinearScans.argMin(values, n);
 
         final double astar = values[imin];
         seats[imin]++;
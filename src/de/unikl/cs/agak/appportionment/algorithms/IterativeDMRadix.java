@@ -0,0 +1,57 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.util.MonotoneRadixHeap;
+
+/**
+ * A naive implementation of divisor methods that assigns one seat after the other
+ * using a monotone radix heap for each step.
+ * <p/>
+ * This works since the extracted values <code>d(seats[i])/v_i</code> never decrease.
+ */
+public class IterativeDMRadix extends IterativeMethod {
+
+    @Override
+    public Apportionment apportion(final ApportionmentInstance instance, final DivisorMethod dm) {
+        final int n = instance.votes.length;
+
+        // Initialize heap
+        final MonotoneRadixHeap heap = new MonotoneRadixHeap(n);
+        for (int i = 0; i < n; i++) {
+            heap.add(i, dm.d(0) / instance.votes[i]);
+        }
+
+        // Subsequently assign seats
+        final int[] seats = new int[n];
+        int k = instance.k;
+        while (k > 1) {
+            final int i = heap.removeMin();
+            seats[i]++;
+            heap.add(i, dm.d(seats[i]) / instance.votes[i]);
+            k--;
+        }
+
+        // Last seat determines astar
+        seats[heap.removeMin()]++;
+
+        return determineTies(instance, dm, seats, heap.lastKey());
+    }
+}
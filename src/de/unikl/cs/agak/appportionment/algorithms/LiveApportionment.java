@@ -0,0 +1,479 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps an apportionment up to date while vote deltas stream in, e.g. precinct
+ * results on election night, and publishes the parties whose seats changed.
+ * <p/>
+ * Deltas can be submitted from any thread. A single worker thread coalesces
+ * them: once a delta arrives, it waits for more until publishing would exceed
+ * the latency budget (taking the time the last recomputation took into account),
+ * then applies all deltas at once to a {@link DynamicApportionment} and hands the
+ * changed parties to the {@link Subscriber}. Thus, bursts of deltas cause a single
+ * incremental recomputation, and no delta waits longer than the budget unless
+ * recomputation itself is slower.
+ * <p/>
+ * Parties without any votes (yet) get no seats; so do parties whose tally
+ * has been corrected to zero or below.
+ */
+public class LiveApportionment implements AutoCloseable {
+
+  /**
+   * Receives the changes of the apportionment. Called on the worker thread, one
+   * update at a time; slow subscribers delay further recomputations.
+   * Runtime exceptions are handed to the worker thread's uncaught exception
+   * handler, and later updates are published nonetheless.
+   */
+  public interface Subscriber {
+    void onUpdate(Update update);
+  }
+
+  /**
+   * The new seats of all parties whose seats or ties have changed.
+   */
+  public static final class Update {
+    /**
+     * The changed parties, in no particular order.
+     */
+    public final int[] parties;
+    /**
+     * <code>seats[j]</code> is the new number of seats of party <code>parties[j]</code>.
+     * @see Apportionment#seats
+     */
+    public final int[] seats;
+    /**
+     * @see Apportionment#tiedSeats
+     */
+    public final int[] tiedSeats;
+    /**
+     * The new (reciprocal of the) proportionality constant; NaN if no party has votes.
+     */
+    public final double astar;
+    /**
+     * The number of deltas this update accounts for.
+     */
+    public final int deltas;
+    /**
+     * The time between submission of the oldest of these deltas and publication.
+     */
+    public final long latencyNanos;
+
+    Update(final int[] parties, final int[] seats, final int[] tiedSeats, final double astar,
+           final int deltas, final long latencyNanos) {
+      this.parties = parties;
+      this.seats = seats;
+      this.tiedSeats = tiedSeats;
+      this.astar = astar;
+      this.deltas = deltas;
+      this.latencyNanos = latencyNanos;
+    }
+  }
+
+  private final int n;
+  private final int k;
+  private final long budgetNanos;
+  private final Subscriber subscriber;
+  private final Thread worker;
+
+  // Guarded by lock
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final double[] pendingDelta;
+  private final boolean[] isPending;
+  private final int[] pending;
+  private int pendingSize = 0;
+  private int pendingDeltas = 0;
+  private long oldestPending = 0;
+  private long submitted = 0;
+  private long publishedDeltas = 0;
+  private int flushing = 0; // number of running flush() calls
+  private boolean closed = false;
+  private final int[] publishedSeats;
+  private final int[] publishedTiedSeats;
+  private double publishedAstar;
+
+  // Owned by the worker thread
+  private final DynamicApportionment dynamic;
+  private final double[] tally;
+  private final int[] idOf;         // party -> id in dynamic, -1 if not present
+  private int[] partyOf = new int[0]; // id in dynamic -> party
+  private final boolean[] isChanged;
+  private final int[] changedParties;
+  private int changedSize = 0;
+  private int[] touched = new int[0];
+  private long estimateNanos = 0;
+
+  /**
+   * Starts the worker thread.
+   *
+   * @param initial       The initial tallies, which may contain zeros, and the house size.
+   * @param dm            The divisor method to apportion with.
+   * @param latencyBudget The time a delta may take until its effect is published.
+   * @param unit          The unit of <code>latencyBudget</code>.
+   * @param subscriber    Receives all changes.
+   * @throws IllegalArgumentException if some initial tally is negative.
+   */
+  public LiveApportionment(final ApportionmentInstance initial, final DivisorMethod dm,
+                           final long latencyBudget, final TimeUnit unit, final Subscriber subscriber) {
+    this.n = initial.votes.length;
+    this.k = initial.k;
+    this.budgetNanos = unit.toNanos(latencyBudget);
+    this.subscriber = subscriber;
+
+    this.pendingDelta = new double[n];
+    this.isPending = new boolean[n];
+    this.pending = new int[n];
+    this.publishedSeats = new int[n];
+    this.publishedTiedSeats = new int[n];
+    this.tally = Arrays.copyOf(initial.votes, n);
+    this.idOf = new int[n];
+    this.isChanged = new boolean[n];
+    this.changedParties = new int[n];
+
+    // Start with the parties that have votes
+    int present = 0;
+    for ( final double v : tally ) {
+      if ( v < 0 ) throw new IllegalArgumentException("Tallies must not be negative, got " + v);
+      if ( v > 0 ) present++;
+    }
+    final double[] votes = new double[present];
+    for ( int i = 0, id = 0; i < n; i++ ) {
+      if ( tally[i] > 0 ) {
+        votes[id] = tally[i];
+        idOf[i] = id;
+        setParty(id, i);
+        id++;
+      }
+      else {
+        idOf[i] = -1;
+      }
+    }
+    this.dynamic = present > 0
+        ? new DynamicApportionment(new ApportionmentInstance(votes, k), dm)
+        : new DynamicApportionment(dm, k);
+    for ( int i = 0; i < n; i++ ) {
+      if ( idOf[i] >= 0 ) {
+        publishedSeats[i] = dynamic.seats(idOf[i]);
+        publishedTiedSeats[i] = dynamic.tiedSeats(idOf[i]);
+      }
+    }
+    publishedAstar = dynamic.astar();
+
+    this.worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        work();
+      }
+    }, getClass().getSimpleName());
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  /**
+   * Adds <code>delta</code> votes to the tally of the given party; negative
+   * deltas correct earlier reports. Returns immediately.
+   *
+   * @throws IllegalStateException if this pipeline has been closed.
+   */
+  public void submit(final int party, final double delta) {
+    if ( party < 0 || party >= n ) {
+      throw new IllegalArgumentException("No party " + party);
+    }
+    lock.lock();
+    try {
+      if ( closed ) throw new IllegalStateException("Pipeline has been closed");
+      if ( pendingSize == 0 ) {
+        oldestPending = System.nanoTime();
+        changed.signalAll();
+      }
+      if ( !isPending[party] ) {
+        isPending[party] = true;
+        pending[pendingSize++] = party;
+      }
+      pendingDelta[party] += delta;
+      pendingDeltas++;
+      submitted++;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Publishes pending deltas without waiting for more, and returns once all deltas
+   * submitted before the call have been published.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public void flush() throws InterruptedException {
+    lock.lock();
+    try {
+      final long target = submitted;
+      flushing++;
+      try {
+        changed.signalAll();
+        while ( publishedDeltas < target && worker.isAlive() ) {
+          changed.await(10, TimeUnit.MILLISECONDS);
+        }
+      }
+      finally {
+        flushing--;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The last published apportionment; <code>null</code> if no party has votes.
+   */
+  public Apportionment snapshot() {
+    lock.lock();
+    try {
+      if ( Double.isNaN(publishedAstar) ) return null;
+      return new Apportionment(k, Arrays.copyOf(publishedSeats, n), Arrays.copyOf(publishedTiedSeats, n),
+          publishedAstar);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Publishes all pending deltas and stops the worker thread.
+   * <p/>
+   * If interrupted while waiting for the worker, restores the interrupt flag and
+   * returns early; the worker still publishes the pending deltas and stops.
+   * Use {@link #awaitTermination()} to wait interruptibly.
+   */
+  @Override
+  public void close() {
+    shutdown();
+    try {
+      worker.join();
+    }
+    catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Like {@link #close()}, but throws if interrupted while waiting for the worker.
+   *
+   * @throws InterruptedException if interrupted while waiting for the worker.
+   */
+  public void awaitTermination() throws InterruptedException {
+    shutdown();
+    worker.join();
+  }
+
+  private void shutdown() {
+    lock.lock();
+    try {
+      closed = true;
+      changed.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void work() {
+    int[] batch = new int[n];
+    double[] batchDelta = new double[n];
+    while ( true ) {
+      final int batchSize;
+      final int deltas;
+      final long oldest;
+
+      lock.lock();
+      try {
+        while ( pendingSize == 0 && !closed ) {
+          changed.awaitUninterruptibly();
+        }
+        if ( pendingSize == 0 ) return;
+
+        // Coalesce until the budget, minus what recomputation takes, is used up
+        final long deadline = oldestPending + budgetNanos - estimateNanos;
+        long remaining;
+        while ( !closed && flushing == 0 && (remaining = deadline - System.nanoTime()) > 0 ) {
+          try {
+            changed.awaitNanos(remaining);
+          }
+          catch ( final InterruptedException e ) {
+            break;
+          }
+        }
+
+        batchSize = pendingSize;
+        deltas = pendingDeltas;
+        oldest = oldestPending;
+        for ( int j = 0; j < batchSize; j++ ) {
+          final int i = pending[j];
+          batch[j] = i;
+          batchDelta[j] = pendingDelta[i];
+          pendingDelta[i] = 0;
+          isPending[i] = false;
+        }
+        pendingSize = 0;
+        pendingDeltas = 0;
+      }
+      finally {
+        lock.unlock();
+      }
+
+      final long start = System.nanoTime();
+      apply(batch, batchDelta, batchSize);
+      final Update update = collectChanges(deltas, oldest);
+      final long end = System.nanoTime();
+      // Smooth the estimate, but react quickly to slow recomputations
+      estimateNanos = Math.max(end - start, (3 * estimateNanos + (end - start)) / 4);
+
+      lock.lock();
+      try {
+        for ( int j = 0; j < update.parties.length; j++ ) {
+          publishedSeats[update.parties[j]] = update.seats[j];
+          publishedTiedSeats[update.parties[j]] = update.tiedSeats[j];
+        }
+        publishedAstar = update.astar;
+      }
+      finally {
+        lock.unlock();
+      }
+      if ( update.parties.length > 0 ) {
+        try {
+          subscriber.onUpdate(update);
+        }
+        catch ( final RuntimeException e ) {
+          // Report, but keep publishing
+          final Thread self = Thread.currentThread();
+          self.getUncaughtExceptionHandler().uncaughtException(self, e);
+        }
+      }
+      lock.lock();
+      try {
+        publishedDeltas += deltas;
+        changed.signalAll();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Applies the deltas to the tallies and the apportionment, and records which
+   * parties may have changed.
+   */
+  private void apply(final int[] batch, final double[] batchDelta, final int batchSize) {
+    changedSize = 0;
+
+    // Parties that stay present are updated in one go
+    final int[] ids = new int[batchSize];
+    final double[] weights = new double[batchSize];
+    int updates = 0;
+    for ( int j = 0; j < batchSize; j++ ) {
+      final int i = batch[j];
+      tally[i] += batchDelta[j];
+      if ( idOf[i] >= 0 && tally[i] > 0 ) {
+        ids[updates] = idOf[i];
+        weights[updates] = tally[i];
+        updates++;
+      }
+    }
+    if ( updates > 0 ) {
+      dynamic.updateWeights(Arrays.copyOf(ids, updates), Arrays.copyOf(weights, updates));
+      recordTouched();
+    }
+
+    // Parties whose tally drops to zero resp. becomes positive leave resp. join
+    for ( int j = 0; j < batchSize; j++ ) {
+      final int i = batch[j];
+      if ( idOf[i] >= 0 && tally[i] <= 0 ) {
+        dynamic.removeParty(idOf[i]);
+        recordTouched();
+        idOf[i] = -1;
+      }
+    }
+    for ( int j = 0; j < batchSize; j++ ) {
+      final int i = batch[j];
+      if ( idOf[i] < 0 && tally[i] > 0 ) {
+        final int id = dynamic.addParty(tally[i]);
+        idOf[i] = id;
+        setParty(id, i);
+        recordTouched();
+      }
+    }
+  }
+
+  private void setParty(final int id, final int party) {
+    if ( id >= partyOf.length ) {
+      partyOf = Arrays.copyOf(partyOf, Math.max(16, 2 * id));
+    }
+    partyOf[id] = party;
+  }
+
+  private void recordTouched() {
+    if ( touched.length < dynamic.capacity() ) {
+      touched = new int[dynamic.capacity()];
+    }
+    final int size = dynamic.lastTouched(touched);
+    for ( int t = 0; t < size; t++ ) {
+      final int i = partyOf[touched[t]];
+      if ( !isChanged[i] ) {
+        isChanged[i] = true;
+        changedParties[changedSize++] = i;
+      }
+    }
+  }
+
+  /**
+   * @return The changes with respect to the last published apportionment.
+   */
+  private Update collectChanges(final int deltas, final long oldest) {
+    final int[] parties = new int[changedSize];
+    final int[] seats = new int[changedSize];
+    final int[] tiedSeats = new int[changedSize];
+    int size = 0;
+    for ( int c = 0; c < changedSize; c++ ) {
+      final int i = changedParties[c];
+      isChanged[i] = false;
+      final int s = idOf[i] >= 0 ? dynamic.seats(idOf[i]) : 0;
+      final int t = idOf[i] >= 0 ? dynamic.tiedSeats(idOf[i]) : 0;
+      // publishedSeats is only written by this thread, so reading without lock is fine
+      if ( s != publishedSeats[i] || t != publishedTiedSeats[i] ) {
+        parties[size] = i;
+        seats[size] = s;
+        tiedSeats[size] = t;
+        size++;
+      }
+    }
+    return new Update(Arrays.copyOf(parties, size), Arrays.copyOf(seats, size), Arrays.copyOf(tiedSeats, size),
+        dynamic.astar(), deltas, System.nanoTime() - oldest);
+  }
+}
@@ -0,0 +1,316 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.EPSILON;
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyEquals;
+
+/**
+ * Apportions many small instances that are packed into flat arrays
+ * (structure of arrays): the votes of all instances are concatenated, and
+ * instance <code>i</code> consists of parties
+ * <code>offsets[i] .. offsets[i+1] - 1</code> with house size <code>ks[i]</code>.
+ * Seats are written to flat arrays indexed like the votes.
+ * <p/>
+ * For instances with only a handful of parties, calling an
+ * {@link ApportionmentAlgorithm} per instance is dominated by allocation and
+ * call overhead. Here, each instance is solved in place like {@link PukelsheimLS}:
+ * estimate, then add or remove single seats by linear scans. No memory is
+ * allocated, and for {@link LinearDivisorMethod}s the divisors are computed
+ * inline instead of by virtual calls.
+ * <p/>
+ * Results (including ties) are the same as those of {@link SandwichSelect}.
+ */
+public final class PackedBatch {
+  private PackedBatch() {
+  }
+
+  /**
+   * @param votes     Votes of all parties of all instances.
+   * @param offsets   Instance <code>i</code> has parties <code>offsets[i] .. offsets[i+1] - 1</code>;
+   *                  has one more entry than there are instances.
+   * @param ks        House sizes of the instances.
+   * @param method    The divisor method to use for all instances.
+   * @param seats     Output; receives the seats of all parties as in
+   *                  {@link de.unikl.cs.agak.appportionment.Apportionment#seats}.
+   * @param tiedSeats Output; receives the tied seats of all parties as in
+   *                  {@link de.unikl.cs.agak.appportionment.Apportionment#tiedSeats}.
+   */
+  public static void apportion(final double[] votes, final int[] offsets, final int[] ks, final DivisorMethod method,
+                               final int[] seats, final int[] tiedSeats) {
+    if ( offsets.length != ks.length + 1 || offsets[ks.length] > votes.length
+        || seats.length < offsets[ks.length] || tiedSeats.length < offsets[ks.length] ) {
+      throw new IllegalArgumentException("Buffer sizes do not match");
+    }
+    // Derived methods invert d starting from their bounds
+    for ( final int k : ks ) {
+      DerivedAlmostLinearMethod.checkHouseSize(method, k);
+    }
+
+    if ( method instanceof LinearDivisorMethod ) {
+      final LinearDivisorMethod ldm = (LinearDivisorMethod)method;
+      apportion(votes, offsets, ks, null, ldm.getAlpha(), ldm.getBeta(), ldm.isStationary(), seats, tiedSeats);
+    }
+    else {
+      apportion(votes, offsets, ks, method, 1, 0, false, seats, tiedSeats);
+    }
+  }
+
+  /**
+   * Relative slack for cheap pre-checks by multiplication; only candidates that
+   * pass them are compared exactly, by the same division the other algorithms use.
+   */
+  private static final double SLACK = 1E-12;
+
+  /*
+   * If method is null, d(j) = alpha * j + beta; otherwise, alpha and beta only
+   * serve for the initial estimate.
+   */
+  private static void apportion(final double[] votes, final int[] offsets, final int[] ks,
+                                final DivisorMethod method, final double alpha, final double beta,
+                                final boolean stationary, final int[] seats, final int[] tiedSeats) {
+    for ( int inst = 0; inst < ks.length; inst++ ) {
+      apportion(votes, offsets[inst], offsets[inst + 1], ks[inst], method, alpha, beta, stationary, seats, tiedSeats);
+    }
+  }
+
+  // Apportions the single instance with parties from .. to-1.
+  private static void apportion(final double[] votes, final int from, final int to, final int k,
+                                final DivisorMethod method, final double alpha, final double beta,
+                                final boolean stationary, final int[] seats, final int[] tiedSeats) {
+    double sumPop = 0;
+    for ( int i = from; i < to; i++ ) {
+      sumPop += votes[i];
+    }
+
+    // Initial estimate as in PukelsheimLS
+    final double D;
+    if ( method != null ) {
+      D = k / sumPop;
+    }
+    else if ( stationary ) {
+      D = alpha * (k + (to - from) * (beta / alpha - 0.5)) / sumPop;
+    }
+    else if ( beta / alpha <= 1.0 ) {
+      D = alpha * k / sumPop;
+    }
+    else {
+      D = alpha * (k + (to - from) * Math.floor(beta / alpha)) / sumPop;
+    }
+
+    // Linear methods and others are handled by separate loops here and in the
+    // scans below, so that the linear ones compute the divisors branch-free.
+    int sumSeats = 0;
+    if ( method == null ) {
+      // Any estimate will do since we correct below, so we d-round without dividing.
+      final double scaledD = D / alpha;
+      final double shift = 1 - beta / alpha;
+      for ( int i = from; i < to; i++ ) {
+        // Truncating is flooring here, since we cut off at zero anyway.
+        final int s = Math.max(0, (int)(votes[i] * scaledD + shift));
+        seats[i] = s;
+        tiedSeats[i] = 0;
+        sumSeats += s;
+      }
+    }
+    else {
+      for ( int i = from; i < to; i++ ) {
+        final int s = method.dRound(votes[i] * D) + 1;
+        seats[i] = s;
+        tiedSeats[i] = 0;
+        sumSeats += s;
+      }
+    }
+
+    // Add seats with the smallest values ...
+    while ( sumSeats < k ) {
+      seats[method == null
+          ? cheapestNext(votes, from, to, seats, alpha, beta)
+          : cheapestNext(votes, from, to, seats, method)]++;
+      sumSeats++;
+    }
+    // ... resp. remove those with the largest values.
+    while ( sumSeats > k ) {
+      seats[method == null
+          ? dearestLast(votes, from, to, seats, alpha, beta)
+          : dearestLast(votes, from, to, seats, method)]--;
+      sumSeats--;
+    }
+
+    // The value of the last seat assigned, the runner-up among last seats and
+    // the smallest value of the next seats. Runners-up further than EPSILON
+    // below astar do not matter, so we only compute those that may be closer.
+    // This pass and the tie pass run only once per instance, so unlike the
+    // scans above, they choose the divisor per element.
+    double astar = Double.NEGATIVE_INFINITY;
+    double second = Double.NEGATIVE_INFINITY;
+    double next = Double.POSITIVE_INFINITY;
+    for ( int i = from; i < to; i++ ) {
+      final double v = votes[i];
+      final int s = seats[i];
+      if ( s > 0 ) {
+        final double d = method == null ? alpha * (s - 1) + beta : method.d(s - 1);
+        if ( d >= (astar - EPSILON) * v * (1 - SLACK) ) {
+          final double value = d / v;
+          if ( value > astar ) {
+            second = astar;
+            astar = value;
+          }
+          else if ( value > second ) {
+            second = value;
+          }
+        }
+      }
+      final double d = method == null ? alpha * s + beta : method.d(s);
+      if ( d <= next * v * (1 + SLACK) && d / v < next ) {
+        next = d / v;
+      }
+    }
+    if ( !fuzzyEquals(astar, second) && !fuzzyEquals(astar, next) ) {
+      // Only the seat of value astar itself, so no ties
+      return;
+    }
+
+    // Determine ties as IterativeMethod does; values far from astar are
+    // sorted out without dividing.
+    final double lower = (astar - EPSILON) * (1 - SLACK);
+    final double upper = (astar + EPSILON) * (1 + SLACK);
+    int theOnlyTie = -1;
+    for ( int i = from; i < to; i++ ) {
+      final double v = votes[i];
+      final int s = seats[i];
+      if ( s > 0 ) {
+        final double d = method == null ? alpha * (s - 1) + beta : method.d(s - 1);
+        if ( d >= lower * v && fuzzyEquals(astar, d / v) ) {
+          // Party i got a seat with value astar
+          seats[i] = s - 1;
+          tiedSeats[i] = 1;
+          theOnlyTie = theOnlyTie == -1 ? i : -42;
+          continue;
+        }
+      }
+      final double d = method == null ? alpha * s + beta : method.d(s);
+      if ( d <= upper * v && fuzzyEquals(astar, d / v) ) {
+        // Party i did *not* get a seat, but also has value astar
+        tiedSeats[i] = 1;
+        theOnlyTie = theOnlyTie == -1 ? i : -42;
+      }
+    }
+    if ( theOnlyTie >= 0 ) {
+      tiedSeats[theOnlyTie] = 0;
+      seats[theOnlyTie] += 1;
+    }
+  }
+
+  /**
+   * @return The party among <code>from .. to-1</code> whose next seat has the smallest
+   *         value <code>(alpha * seats[i] + beta) / votes[i]</code>; the first one of several.
+   */
+  private static int cheapestNext(final double[] votes, final int from, final int to, final int[] seats,
+                                  final double alpha, final double beta) {
+    int im = from;
+    double dm = alpha * seats[from] + beta;
+    double vm = votes[from];
+    for ( int i = from + 1; i < to; i++ ) {
+      final double d = alpha * seats[i] + beta;
+      final double v = votes[i];
+      if ( isLess(d, v, dm, vm) ) {
+        dm = d;
+        vm = v;
+        im = i;
+      }
+    }
+    return im;
+  }
+
+  /**
+   * Like {@link #cheapestNext(double[], int, int, int[], double, double)}, but for any method.
+   */
+  private static int cheapestNext(final double[] votes, final int from, final int to, final int[] seats,
+                                  final DivisorMethod method) {
+    int im = from;
+    double dm = method.d(seats[from]);
+    double vm = votes[from];
+    for ( int i = from + 1; i < to; i++ ) {
+      final double d = method.d(seats[i]);
+      final double v = votes[i];
+      if ( isLess(d, v, dm, vm) ) {
+        dm = d;
+        vm = v;
+        im = i;
+      }
+    }
+    return im;
+  }
+
+  /**
+   * @return The party among <code>from .. to-1</code> whose last seat has the largest
+   *         value <code>(alpha * (seats[i] - 1) + beta) / votes[i]</code>; the first one of several.
+   */
+  private static int dearestLast(final double[] votes, final int from, final int to, final int[] seats,
+                                 final double alpha, final double beta) {
+    int im = -1;
+    double dm = 0;
+    double vm = 1;
+    for ( int i = from; i < to; i++ ) {
+      if ( seats[i] == 0 ) continue;
+      final double d = alpha * (seats[i] - 1) + beta;
+      final double v = votes[i];
+      if ( im < 0 || isLess(dm, vm, d, v) ) {
+        dm = d;
+        vm = v;
+        im = i;
+      }
+    }
+    return im;
+  }
+
+  /**
+   * Like {@link #dearestLast(double[], int, int, int[], double, double)}, but for any method.
+   */
+  private static int dearestLast(final double[] votes, final int from, final int to, final int[] seats,
+                                 final DivisorMethod method) {
+    int im = -1;
+    double dm = 0;
+    double vm = 1;
+    for ( int i = from; i < to; i++ ) {
+      if ( seats[i] == 0 ) continue;
+      final double d = method.d(seats[i] - 1);
+      final double v = votes[i];
+      if ( im < 0 || isLess(dm, vm, d, v) ) {
+        dm = d;
+        vm = v;
+        im = i;
+      }
+    }
+    return im;
+  }
+
+  /**
+   * @return <code>d / v < e / w</code>, decided by multiplication if that is
+   *         clear despite rounding errors.
+   */
+  private static boolean isLess(final double d, final double v, final double e, final double w) {
+    final double lhs = d * w;
+    final double rhs = e * v;
+    return lhs < rhs * (1 - SLACK) || lhs <= rhs * (1 + SLACK) && d / v < e / w;
+  }
+}
@@ -0,0 +1,292 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.util.ParallelBlocks;
+import de.unikl.cs.agak.appportionment.util.ParallelRankSelection;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.*;
+import static de.unikl.cs.agak.appportionment.util.ParallelBlocks.start;
+
+
+/**
+ * Implements the same algorithm as {@link SandwichSelect}, but splits the
+ * linear scans, the construction of the candidate set, the rank selection
+ * and the derivation of seats into blocks that are processed on a
+ * {@link ForkJoinPool}.
+ * <p/>
+ * Blocks contain at least <code>cutoff</code> parties resp. candidates;
+ * smaller instances are solved sequentially in the calling thread.
+ */
+public class ParallelSandwichSelect extends SelectionBasedAlgorithm implements AlgorithmWithCounters {
+  /**
+   * The minimum number of parties per block used by the default constructor.
+   */
+  public static final int DEFAULT_CUTOFF = 1 << 15;
+
+  private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+
+  private final ForkJoinPool pool;
+  private final int cutoff;
+
+  /* Interface AlgorithmWithCounters and this member variable are only
+   * for purposes of experiments. In a productive environment, remove both.
+   */
+  private final Counters counters = new Counters(2);
+
+  public ParallelSandwichSelect() {
+    this(DEFAULT_POOL, DEFAULT_CUTOFF);
+  }
+
+  public ParallelSandwichSelect(final int cutoff) {
+    this(DEFAULT_POOL, cutoff);
+  }
+
+  public ParallelSandwichSelect(final ForkJoinPool pool, final int cutoff) {
+    assert pool != null && cutoff > 0 : "Illegal parameters pool=" + pool + ", cutoff=" + cutoff;
+    this.pool = pool;
+    this.cutoff = cutoff;
+  }
+
+  @Override
+  double unitSize(final ApportionmentInstance instance, final DivisorMethod method) {
+    if (  !(method instanceof AlmostLinearDivisorMethod) ) {
+      throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
+    }
+    DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
+    final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
+    final double alpha = dm.getAlpha();
+    final double betaU = dm.getBetaUpper();
+    final double betaL = dm.getBetaLower();
+
+    final double[] votes = instance.votes;
+    final int n = votes.length;
+    final int blocks = ParallelBlocks.count(pool, n, cutoff);
+
+    // Find largest population
+    final double[] blockMax = new double[blocks];
+    ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+      @Override
+      public void run(final int b) {
+        double max = Double.NEGATIVE_INFINITY;
+        final int to = start(b + 1, n, blocks);
+        for ( int i = start(b, n, blocks); i < to; i++ ) {
+          if ( votes[i] > max ) max = votes[i];
+        }
+        blockMax[b] = max;
+      }
+    });
+    double maxPop = Double.NEGATIVE_INFINITY;
+    for ( double p : blockMax ) {
+      if ( p > maxPop ) maxPop = p;
+    }
+    final double x_overbar = dm.d(instance.k - 1) / maxPop + 5 * EPSILON;
+    // x_overbar clearly feasible and suboptimal
+
+    // Determine size and population of I_x_overbar; its members are
+    // identified again on the fly below, so we do not store them.
+    final double minPop = dm.d(0) / x_overbar;
+    final int[] blockIx = new int[blocks];
+    final double[] blockSigma = new double[blocks];
+    ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+      @Override
+      public void run(final int b) {
+        int size = 0;
+        double sigma = 0;
+        final int to = start(b + 1, n, blocks);
+        for ( int i = start(b, n, blocks); i < to; i++ ) {
+          if ( votes[i] > minPop ) {
+            size += 1;
+            sigma += votes[i];
+          }
+        }
+        blockIx[b] = size;
+        blockSigma[b] = sigma;
+      }
+    });
+    int I_x_overbar_size = 0;
+    double Sigma_I_x_overbar = 0;
+    for ( int b = 0; b < blocks; b++ ) {
+      I_x_overbar_size += blockIx[b];
+      Sigma_I_x_overbar += blockSigma[b];
+    }
+    counters.set(0, I_x_overbar_size);
+
+    final double a_overbar =
+        (alpha * instance.k + betaU * I_x_overbar_size) / Sigma_I_x_overbar;
+    final double a_underbar = Math.max(0,
+        (alpha * instance.k - (alpha - betaL) * I_x_overbar_size) / Sigma_I_x_overbar);
+
+    // step 6, part 1: count candidates per block so that blocks can write
+    // their candidates into disjoint ranges of A_hat
+    final int[] blockCand = new int[blocks];
+    final int[] blockMissing = new int[blocks];
+    ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+      @Override
+      public void run(final int b) {
+        int cand = 0;
+        int missing = 0;
+        final int to = start(b + 1, n, blocks);
+        for ( int i = start(b, n, blocks); i < to; i++ ) {
+          final double v_i = votes[i];
+          if ( v_i <= minPop || dm.d(0) / v_i > a_overbar ) continue;
+
+          final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
+          final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
+          final int maxJ = fuzzyFloor(dm.deltaInvRaw(v_i * a_overbar));
+          cand += Math.max(0, maxJ - minJ + 1);
+          missing += minJ;
+        }
+        blockCand[b] = cand;
+        blockMissing[b] = missing;
+      }
+    });
+
+    final int[] offsets = new int[blocks];
+    int A_hat_size = 0;
+    int k_hat = instance.k;
+    for ( int b = 0; b < blocks; b++ ) {
+      offsets[b] = A_hat_size;
+      A_hat_size += blockCand[b];
+      k_hat -= blockMissing[b]; // Elements 0,1,...,minJ-1 missing from A_hat
+    }
+
+    // step 6, part 2: add all elements between a_underbar and a_overbar
+    final double[] A_hat = new double[A_hat_size];
+    ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+      @Override
+      public void run(final int b) {
+        int pos = offsets[b];
+        final int to = start(b + 1, n, blocks);
+        for ( int i = start(b, n, blocks); i < to; i++ ) {
+          final double v_i = votes[i];
+          // If sequence is not contributing, deltaInvRaw might be invalid (< 0 etc),
+          // so explicitly handle that case:
+          if ( v_i <= minPop || dm.d(0) / v_i > a_overbar ) continue;
+
+          final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
+          final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
+          final int maxJ = fuzzyFloor(dm.deltaInvRaw(v_i * a_overbar));
+          for ( int j = minJ; j <= maxJ; ++j ) {
+            A_hat[pos++] = dm.d(j) / v_i;
+          }
+        }
+      }
+    });
+
+    // Update benchmark counter
+    counters.set(1, A_hat_size);
+
+    // Selection algorithm is zero-based!
+    return ParallelRankSelection.select(pool, A_hat, A_hat_size - 1, k_hat - 1, cutoff);
+  }
+
+  @Override
+  Apportionment deriveSeats(final ApportionmentInstance instance, final DivisorMethod method, final double astar,
+                            final boolean tieFree) {
+    final double[] votes = instance.votes;
+    final int n = votes.length;
+    final int blocks = ParallelBlocks.count(pool, n, cutoff);
+
+    final int[] seats = new int[n];
+    final int[] tiedSeats = new int[n];
+    final int[] blockTies = new int[blocks];
+    final int[] blockFirstTie = new int[blocks];
+    ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+      @Override
+      public void run(final int b) {
+        int ties = 0;
+        int firstTie = -1;
+        final int to = start(b + 1, n, blocks);
+        for ( int i = start(b, n, blocks); i < to; i++ ) {
+          // Derive seats
+          seats[i] = method.dRound(votes[i] * astar) + 1;
+          if ( tieFree ) continue;
+
+          // Now we have *all* seats with value astar, which may be too many.
+          // Identify ties for the last few seats!
+          if ( seats[i] == 0 ) {
+            if ( fuzzyEquals(method.d(0) / votes[i], astar) ) {
+              // TODO This should actually never happen; cf. SelectionBasedAlgorithm
+              throw new IllegalStateException();
+            }
+          }
+          else if ( fuzzyEquals(method.d(seats[i] - 1) / votes[i], astar) ) {
+            tiedSeats[i] = 1;
+            seats[i] -= 1;
+            if ( firstTie == -1 ) firstTie = i;
+            ties += 1;
+          }
+        }
+        blockTies[b] = ties;
+        blockFirstTie[b] = firstTie;
+      }
+    });
+
+    // A single tie is no tie at all
+    int ties = 0;
+    int theOnlyTie = -1;
+    for ( int b = 0; b < blocks; b++ ) {
+      ties += blockTies[b];
+      if ( theOnlyTie == -1 ) theOnlyTie = blockFirstTie[b];
+    }
+    if ( ties == 1 ) {
+      tiedSeats[theOnlyTie] = 0;
+      seats[theOnlyTie] += 1;
+    }
+
+    return new Apportionment(instance.k, seats, tiedSeats, astar);
+  }
+
+  @Override
+  public int numberOfCounters() {
+    return 2;
+  }
+
+  @Override
+  public int getLastCounter(int i) {
+    switch ( i ) {
+      case 0:
+        return counters.get(0);
+      case 1:
+        return counters.get(1);
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  public String getCounterLabel(int i) {
+    switch ( i ) {
+      case 0:
+        return "|I_x|";
+      case 1:
+        return "|A|";
+      default:
+        return "NoSuchCounter";
+    }
+  }
+}
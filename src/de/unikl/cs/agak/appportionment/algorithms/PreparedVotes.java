@@ -0,0 +1,233 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
+import de.unikl.cs.agak.appportionment.util.RankSelection;
+
+import java.util.Arrays;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.*;
+
+/**
+ * An index over a fixed vote vector for answering many apportionment queries
+ * with different house sizes or methods.
+ * <p/>
+ * Votes are sorted once, in decreasing order, and prefix sums are kept. Then the
+ * set <code>I_x_overbar</code> of {@link SandwichSelect} is a prefix of the sorted
+ * votes and can be found, together with its sum, by binary search. Candidates are
+ * only generated for the parties that contribute any, so a query takes time
+ * <code>O(log n + |I| + |A|)</code> for the <code>|I|</code> contributing parties and
+ * the candidate set <code>A</code>, instead of <code>O(n)</code>.
+ * The seats of single parties can then be read off the {@link Result} in
+ * constant time each.
+ * <p/>
+ * Preparation takes time <code>O(n log n)</code>. Instances of this class are
+ * immutable and thus safe for concurrent use.
+ */
+public class PreparedVotes {
+  private final double[] votes;
+  /**
+   * The votes in decreasing order.
+   */
+  private final double[] sorted;
+  /**
+   * <code>prefix[j]</code> is the sum of <code>sorted[0..j-1]</code>.
+   */
+  private final double[] prefix;
+  private final RankSelection.Selector selector;
+
+  /**
+   * Uses {@link RankSelection#RADIX} for selecting from the candidate set.
+   *
+   * @param votes The votes of all parties; copied.
+   */
+  public PreparedVotes(final double[] votes) {
+    this(votes, RankSelection.RADIX);
+  }
+
+  /**
+   * @param votes    The votes of all parties; copied.
+   * @param selector The selection algorithm to use on the candidate sets.
+   */
+  public PreparedVotes(final double[] votes, final RankSelection.Selector selector) {
+    final int n = votes.length;
+    if ( n == 0 ) throw new IllegalArgumentException("Need at least one party");
+    this.votes = Arrays.copyOf(votes, n);
+    this.selector = selector;
+
+    final double[] ascending = Arrays.copyOf(votes, n);
+    Arrays.sort(ascending);
+    this.sorted = new double[n];
+    this.prefix = new double[n + 1];
+    for ( int j = 0; j < n; j++ ) {
+      sorted[j] = ascending[n - 1 - j];
+      prefix[j + 1] = prefix[j] + sorted[j];
+    }
+  }
+
+  /**
+   * @return The number of parties.
+   */
+  public int size() {
+    return votes.length;
+  }
+
+  /**
+   * @return A copy of the votes, in the original order.
+   */
+  public double[] votes() {
+    return Arrays.copyOf(votes, votes.length);
+  }
+
+  /**
+   * @return The number of parties with more than <code>threshold</code> votes.
+   */
+  public int countAbove(final double threshold) {
+    // Find the first position with sorted[j] <= threshold
+    int lo = 0;
+    int hi = sorted.length;
+    while ( lo < hi ) {
+      final int mid = (lo + hi) >>> 1;
+      if ( sorted[mid] > threshold ) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * @return The total votes of the <code>count</code> largest parties.
+   */
+  public double sumOfLargest(final int count) {
+    return prefix[count];
+  }
+
+  /**
+   * Computes the apportionment of <code>k</code> seats among the prepared votes.
+   *
+   * @return The result; its seats can be queried party by party.
+   */
+  public Result apportion(final int k, final AlmostLinearDivisorMethod dm) {
+    DerivedAlmostLinearMethod.checkHouseSize(dm, k);
+    final double alpha = dm.getAlpha();
+    final double betaU = dm.getBetaUpper();
+    final double betaL = dm.getBetaLower();
+
+    // Same bounds as in SandwichSelect, but I_x_overbar is a prefix of sorted
+    final double x_overbar = dm.d(k - 1) / sorted[0] + 5 * EPSILON;
+    final int I_x_overbar_size = countAbove(dm.d(0) / x_overbar);
+    final double Sigma_I_x_overbar = sumOfLargest(I_x_overbar_size);
+
+    final double a_overbar =
+        (alpha * k + betaU * I_x_overbar_size) / Sigma_I_x_overbar;
+    final double a_underbar = Math.max(0,
+        (alpha * k - (alpha - betaL) * I_x_overbar_size) / Sigma_I_x_overbar);
+
+    final double[] A_hat = new double[(int)Math.ceil(
+        2 * (1 + (betaU - betaL) / alpha) * I_x_overbar_size)];
+    int A_hat_size = 0;
+    int k_hat = k;
+    for ( int j = 0; j < I_x_overbar_size; ++j ) {
+      final double v_i = sorted[j];
+      // Smaller parties do not contribute either
+      if ( dm.d(0) / v_i > a_overbar ) break;
+
+      final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
+      final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
+      final int maxJ = fuzzyFloor(dm.deltaInvRaw(v_i * a_overbar));
+      for ( int s = minJ; s <= maxJ; ++s ) {
+        A_hat[A_hat_size++] = dm.d(s) / v_i;
+      }
+      k_hat -= minJ; // Elements 0,1,...,minJ-1 missing from A_hat
+    }
+
+    final double astar = selector.select(A_hat, A_hat_size - 1, k_hat - 1);
+
+    // Count the parties with a seat of value a*, as deriveSeats would
+    int ties = 0;
+    if ( fuzzyEquals(astar, a_underbar) || fuzzyEquals(astar, a_overbar) ) {
+      // Candidates fuzzily equal to a* might be missing from A_hat
+      for ( final double v : sorted ) {
+        final int s = dm.dRound(v * astar) + 1;
+        if ( s > 0 && fuzzyEquals(dm.d(s - 1) / v, astar) ) ties++;
+      }
+    }
+    else {
+      // Selectors only permute A_hat, so every candidate is counted once
+      for ( int c = 0; c < A_hat_size; c++ ) {
+        if ( fuzzyEquals(A_hat[c], astar) ) ties++;
+      }
+    }
+
+    return new Result(k, dm, astar, ties > 1);
+  }
+
+  /**
+   * The apportionment of the prepared votes for one house size and method.
+   */
+  public final class Result {
+    private final int k;
+    private final AlmostLinearDivisorMethod dm;
+    private final boolean tied;
+    /**
+     * The (reciprocal of the) proportionality constant.
+     */
+    public final double astar;
+
+    Result(final int k, final AlmostLinearDivisorMethod dm, final double astar, final boolean tied) {
+      this.k = k;
+      this.dm = dm;
+      this.astar = astar;
+      this.tied = tied;
+    }
+
+    /**
+     * @return The number of seats party <code>i</code> definitely gets.
+     * @see Apportionment#seats
+     */
+    public int seats(final int i) {
+      final int s = dm.dRound(votes[i] * astar) + 1;
+      return isTied(i, s) ? s - 1 : s;
+    }
+
+    /**
+     * @return 1 if party <code>i</code> is tied for the last seats, 0 otherwise.
+     * @see Apportionment#tiedSeats
+     */
+    public int tiedSeats(final int i) {
+      return isTied(i, dm.dRound(votes[i] * astar) + 1) ? 1 : 0;
+    }
+
+    private boolean isTied(final int i, final int s) {
+      return tied && s > 0 && fuzzyEquals(dm.d(s - 1) / votes[i], astar);
+    }
+
+    /**
+     * @return The seats of all parties; takes linear time.
+     */
+    public Apportionment toApportionment() {
+      final int n = votes.length;
+      final int[] seats = new int[n];
+      final int[] tiedSeats = new int[n];
+      SelectionBasedAlgorithm.deriveSeats(new ApportionmentInstance(votes, k), dm, astar, !tied, seats, tiedSeats);
+      return new Apportionment(k, seats, tiedSeats, astar);
+    }
+  }
+}
@@ -18,8 +18,10 @@ package de.unikl.cs.agak.appportionment.algorithms;
 import de.unikl.cs.agak.appportionment.Apportionment;
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
 import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.LinearScans;
 import static de.unikl.cs.agak.appportionment.util.AssortedUtils.sum;
 
 /**
@@ -37,7 +39,7 @@ public class PukelsheimLS extends IterativeMethod implements AlgorithmWithCounte
   /* Interface AlgorithmWithCounters and this member variable are only
    * for purposes of experiments. In a productive environment, remove both.
    */
-  private int lastCounter = -1;
+  private final Counters counters = new Counters(1);
 
   @Override
   public Apportionment apportion(final ApportionmentInstance instance, final DivisorMethod dm) {
@@ -76,7 +78,7 @@ public class PukelsheimLS extends IterativeMethod implements AlgorithmWithCounte
     }
 
     int sumSeats = sum(seats);
-    lastCounter = instance.k - sumSeats;
+    counters.set(0, instance.k - sumSeats);
 
     final int order;
     final int offset;
@@ -113,11 +115,8 @@ public class PukelsheimLS extends IterativeMethod implements AlgorithmWithCounte
       // Subsequently assign seats
       int im;
       while ( sumSeats != instance.k ) {
-        // Find index with maximum value
-        im = 0;
-        for ( int i = 1; i < n; i++ ) {
-          if ( order * values[i] < order * values[im] ) im = i;
-        }
+        // Find index with minimum resp. maximum value
+        im = order == 1 ? LinearScans.argMin(values, n) : LinearScans.argMax(values, n);
 
         seats[im] += step;
         if ( step == -1 && seats[im] <= 0 ) {
@@ -149,7 +148,7 @@ public class PukelsheimLS extends IterativeMethod implements AlgorithmWithCounte
 
   @Override
   public int getLastCounter(int i) {
-    return lastCounter;
+    return counters.get(0);
   }
 
   @Override
@@ -18,12 +18,11 @@ package de.unikl.cs.agak.appportionment.algorithms;
 import de.unikl.cs.agak.appportionment.Apportionment;
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
 import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.DaryHeap;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.PriorityQueue;
 import static de.unikl.cs.agak.appportionment.util.AssortedUtils.sum;
 
 
@@ -34,7 +33,8 @@ import static de.unikl.cs.agak.appportionment.util.AssortedUtils.sum;
  * Proportional Representation<br/>
  * Springer, 2014<br/>
  * </dir>
- * The implementation uses a priority queue for (asymptotically) efficient steps.
+ * The implementation uses a priority queue for (asymptotically) efficient steps;
+ * we use an indexed d-ary heap on primitive arrays and update keys in place.
  *
  * @author Raphael Reitzig (reitzig@cs.uni-kl.de)
  */
@@ -42,7 +42,7 @@ public class PukelsheimPQ extends IterativeMethod implements AlgorithmWithCounte
   /* Interface AlgorithmWithCounters and this member variable are only
    * for purposes of experiments. In a productive environment, remove both.
    */
-  private int lastCounter = -1;
+  private final Counters counters = new Counters(1);
 
   @Override
   public Apportionment apportion(final ApportionmentInstance instance, final DivisorMethod dm) {
@@ -81,9 +81,9 @@ public class PukelsheimPQ extends IterativeMethod implements AlgorithmWithCounte
     }
 
     int sumSeats = sum(seats);
-    lastCounter = instance.k - sumSeats;
+    counters.set(0, instance.k - sumSeats);
 
-    final Comparator<Entry> order;
+    final boolean max;
     final int offset;
     final int step;
     if ( sumSeats == instance.k ) {
@@ -92,48 +92,39 @@ public class PukelsheimPQ extends IterativeMethod implements AlgorithmWithCounte
     }
     else {
       if ( sumSeats < instance.k ) {
-        // Setup: max-heap, offset for next d_i, add seats
-        order = new Comparator<Entry>() {
-          @Override
-          public int compare(final Entry e1, final Entry e2) {
-            return Double.compare(e1.value, e2.value);
-          }
-        };
+        // Setup: max-heap (w.r.t. v_i/d), offset for next d_i, add seats
+        max = false;
         offset = 0;
         step = +1;
       }
       else { // s > k
-        // Setup: min-heap, offset for previous d_i, remove seats
-        order = new Comparator<Entry>() {
-          @Override
-          public int compare(final Entry e1, final Entry e2) {
-            return -Double.compare(e1.value, e2.value);
-          }
-        };
+        // Setup: min-heap (w.r.t. v_i/d), offset for previous d_i, remove seats
+        max = true;
         offset = -1;
         step = -1;
       }
 
 
       // Initialize heap
-      final ArrayList<Entry> initials = new ArrayList<>(n);
+      final DaryHeap heap = new DaryHeap(n, max);
       for ( int i = 0; i < n; i++ ) {
         if ( step == +1 || seats[i] > 0 ) { // in s>k setting, skip parties without any seats
-          initials.add(new Entry(i, dm.d(seats[i] + offset) / instance.votes[i], order));
+          heap.addUnordered(i, dm.d(seats[i] + offset) / instance.votes[i]);
         }
       }
-      final PriorityQueue<Entry> heap = new PriorityQueue<>(initials);
+      heap.heapify();
 
       // Subsequently adapt seats
       while ( sumSeats != instance.k ) {
-        final Entry e = heap.poll();
-        final int i = e.index;
+        final int i = heap.top();
         seats[i] += step;
 
-        // Unless party i has no more seats to remove, re-add it into PQ
+        // Unless party i has no more seats to remove, update its key in place
         if ( step == +1 || seats[i] != 0 ) {
-          e.value = dm.d(seats[i] + offset) / instance.votes[i];
-          heap.add(e);
+          heap.updateTop(dm.d(seats[i] + offset) / instance.votes[i]);
+        }
+        else {
+          heap.removeTop();
         }
         sumSeats += step;
       }
@@ -157,28 +148,11 @@ public class PukelsheimPQ extends IterativeMethod implements AlgorithmWithCounte
 
   @Override
   public int getLastCounter(int i) {
-    return lastCounter;
+    return counters.get(0);
   }
 
   @Override
   public String getCounterLabel(int i) {
     return "missingSeats";
   }
-
-  private static class Entry implements Comparable<Entry> {
-    final Comparator<Entry> order;
-    final int index;
-    double value;
-
-    Entry(int index, double value, Comparator<Entry> order) {
-      this.index = index;
-      this.value = value;
-      this.order = order;
-    }
-
-    @Override
-    public int compareTo(final Entry e) {
-      return order.compare(this, e);
-    }
-  }
 }
@@ -15,14 +15,18 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package de.unikl.cs.agak.appportionment.algorithms;
 
+import de.unikl.cs.agak.appportionment.Apportionment;
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
 import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.LinearScans;
 import de.unikl.cs.agak.appportionment.util.RankSelection;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 
 import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.*;
 
@@ -39,14 +43,54 @@ public class SandwichSelect extends SelectionBasedAlgorithm implements Algorithm
   /* Interface AlgorithmWithCounters and this member variable are only
    * for purposes of experiments. In a productive environment, remove both.
    */
-  private int lastIx = -1;
-  private int lastCandSize = -1;
+  private final Counters counters = new Counters(2);
+
+  private final RankSelection.Selector selector;
+
+  /**
+   * Uses {@link RankSelection#RADIX} for selecting from the candidate set.
+   */
+  public SandwichSelect() {
+    this(RankSelection.RADIX);
+  }
+
+  /**
+   * @param selector The selection algorithm to use on the candidate set.
+   */
+  public SandwichSelect(final RankSelection.Selector selector) {
+    this.selector = selector;
+  }
 
   @Override
   double unitSize(final ApportionmentInstance instance, final DivisorMethod method) {
+    return unitSize(instance, method, new ApportionmentWorkspace());
+  }
+
+  /**
+   * Like {@link #apportion(ApportionmentInstance, DivisorMethod)}, but works in and
+   * stores its result to the given workspace. Once the buffers of the workspace
+   * have grown large enough, this method does not allocate any memory.
+   *
+   * @param workspace Workspace to use; the result is available from it afterwards.
+   */
+  public void apportionInto(final ApportionmentInstance instance, final DivisorMethod method,
+                            final ApportionmentWorkspace workspace) {
+    final double astar = unitSize(instance, method, workspace);
+
+    workspace.seats(instance.votes.length);
+    deriveSeats(instance, method, astar, workspace.isTieFree(), workspace.getSeats(), workspace.getTiedSeats());
+    workspace.result(instance.k, astar);
+  }
+
+  @Override
+  double unitSize(final ApportionmentInstance instance, final DivisorMethod method,
+                  final ApportionmentWorkspace workspace) {
+    workspace.tieFree(false);
     if (  !(method instanceof AlmostLinearDivisorMethod) ) {
-      throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
+      throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences;"
+          + " see DerivedAlmostLinearMethod");
     }
+    DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
     final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
     final double alpha = dm.getAlpha();
     final double betaU = dm.getBetaUpper();
@@ -55,59 +99,159 @@ public class SandwichSelect extends SelectionBasedAlgorithm implements Algorithm
     final int n = instance.votes.length;
 
     // Find largest population
-    double maxPop = Double.NEGATIVE_INFINITY;
-    for ( double p : instance.votes ) {
-      if ( p > maxPop ) maxPop = p;
-    }
+    final double maxPop = LinearScans.max(instance.votes, n);
     double x_overbar = dm.d(instance.k - 1) / maxPop + 5 * EPSILON;
     // x_overbar clearly feasible and suboptimal
 
-    Collection<Integer> I_x_overbar = new ArrayList<>(n);
-    double Sigma_I_x_overbar = 0;
-    for ( int i = 0; i < n; ++i ) {
-      if ( instance.votes[i] > dm.d(0) / x_overbar ) {
-        I_x_overbar.add(i);
-        Sigma_I_x_overbar += instance.votes[i];
-      }
-    }
-    lastIx = I_x_overbar.size();
+    final int[] I_x_overbar = workspace.indices(n);
+    final int I_x_overbar_size = LinearScans.indicesAbove(instance.votes, n, dm.d(0) / x_overbar, I_x_overbar);
+    final double Sigma_I_x_overbar = LinearScans.sum(instance.votes, I_x_overbar, I_x_overbar_size);
+    counters.set(0, I_x_overbar_size);
 
     final double a_overbar =
-        (alpha * instance.k + betaU * I_x_overbar.size()) / Sigma_I_x_overbar;
+        (alpha * instance.k + betaU * I_x_overbar_size) / Sigma_I_x_overbar;
     final double a_underbar = Math.max(0,
-        (alpha * instance.k - (alpha - betaL) * I_x_overbar.size()) / Sigma_I_x_overbar);
+        (alpha * instance.k - (alpha - betaL) * I_x_overbar_size) / Sigma_I_x_overbar);
 
-    final int A_hat_bound = 2 * I_x_overbar.size();
+    final int A_hat_bound = (int)Math.ceil(
+        2 * (1 + (betaU - betaL) / alpha) * I_x_overbar_size);
 
     // step 6
-    final double[] A_hat = new double[A_hat_bound];
+    final double[] A_hat = workspace.candidates(A_hat_bound);
     // TODO how is this better than just using an ArrayList?
     //            (rank selection below works on arrays, so there may be a tradeoff)
 
     int A_hat_size = 0;
     int k_hat = instance.k;
 
-    for ( int i : I_x_overbar ) {
-      double v_i = instance.votes[i];
-      // If sequence is not contributing, deltaInvRaw might be invalid (< 0 etc),
-      // so explicitly handle that case:
+    if ( dm instanceof LinearDivisorMethod ) {
+      // Affine kernel: the same loop in closed form, so that it contains no calls
+      // that turn megamorphic when several methods are used in the same JVM.
+      final double beta = ((LinearDivisorMethod)dm).getBeta();
+      for ( int ii = 0; ii < I_x_overbar_size; ++ii ) {
+        final double v_i = instance.votes[I_x_overbar[ii]];
+        if ( beta / v_i > a_overbar ) continue;
+
+        final double realMinJ = (v_i * a_underbar - beta) / alpha;
+        final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
+        final int maxJ = fuzzyFloor((v_i * a_overbar - beta) / alpha);
+        for ( int j = minJ; j <= maxJ; ++j ) {
+          A_hat[A_hat_size++] = (alpha * j + beta) / v_i;
+        }
+        k_hat -= minJ;
+      }
+    }
+    else {
+      for ( int ii = 0; ii < I_x_overbar_size; ++ii ) {
+        final int i = I_x_overbar[ii];
+        double v_i = instance.votes[i];
+        // If sequence is not contributing, deltaInvRaw might be invalid (< 0 etc),
+        // so explicitly handle that case:
+        if ( dm.d(0) / v_i > a_overbar ) continue;
+
+        // otherwise: add all elements between a_underbar and a_overbar
+        final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
+        final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
+        final int maxJ = fuzzyFloor(dm.deltaInvRaw(v_i * a_overbar));
+        for ( int j = minJ; j <= maxJ; ++j ) {
+          A_hat[A_hat_size++] = dm.d(j) / v_i;
+        }
+        k_hat -= minJ; // Elements 0,1,...,minJ-1 missing from A_hat
+      }
+    }
+
+    // Update benchmark counter
+    counters.set(1, A_hat_size);
+
+    // Selection algorithm is zero-based!
+    if ( !(selector instanceof RankSelection.BandSelector) ) {
+      return selector.select(A_hat, A_hat_size - 1, k_hat - 1);
+    }
+
+    // The band tells us whether any other candidate is close to astar. Candidates
+    // not in A_hat are off by more than EPSILON unless astar is at the fringe.
+    final int[] band = workspace.band();
+    final double astar = ((RankSelection.BandSelector)selector).select(A_hat, A_hat_size - 1, k_hat - 1, band);
+    workspace.tieFree(band[2] == 1 && !fuzzyEquals(astar, a_underbar) && !fuzzyEquals(astar, a_overbar));
+    return astar;
+  }
+
+  /**
+   * Apportions the same votes for several house sizes at once.
+   * <p/>
+   * Builds one candidate set that covers the sandwich bounds of all house sizes
+   * and selects all ranks from it with a single
+   * {@link RankSelection#multiSelect(double[], int, int[], double[])}; only the
+   * seats are derived for each house size separately.
+   *
+   * @param houseSizes The house sizes, in any order.
+   * @return The apportionments for the house sizes, in the same order.
+   */
+  public Apportionment[] apportionHouseSizes(final double[] votes, final int[] houseSizes,
+                                             final DivisorMethod method) {
+    if ( !(method instanceof AlmostLinearDivisorMethod) ) {
+      throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
+    }
+    final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
+    final double alpha = dm.getAlpha();
+    final double betaU = dm.getBetaUpper();
+    final double betaL = dm.getBetaLower();
+    final int n = votes.length;
+    final int m = houseSizes.length;
+    if ( m == 0 ) return new Apportionment[0];
+
+    final int[] ks = Arrays.copyOf(houseSizes, m);
+    Arrays.sort(ks);
+    final int kMin = ks[0];
+    final int kMax = ks[m - 1];
+    DerivedAlmostLinearMethod.checkHouseSize(method, kMax);
+
+    // I_x_overbar of the largest house size contains those of all others
+    final double maxPop = LinearScans.max(votes, n);
+    final double x_overbar = dm.d(kMax - 1) / maxPop + 5 * EPSILON;
+    final int[] I_x_overbar = new int[n];
+    final int I_x_overbar_size = LinearScans.indicesAbove(votes, n, dm.d(0) / x_overbar, I_x_overbar);
+    final double Sigma_I_x_overbar = LinearScans.sum(votes, I_x_overbar, I_x_overbar_size);
+    counters.set(0, I_x_overbar_size);
+
+    // The bounds hold for any party set that contains all parties with seats,
+    // so the union of the sandwiches is [a_underbar(kMin), a_overbar(kMax)].
+    final double a_overbar =
+        (alpha * kMax + betaU * I_x_overbar_size) / Sigma_I_x_overbar;
+    final double a_underbar = Math.max(0,
+        (alpha * kMin - (alpha - betaL) * I_x_overbar_size) / Sigma_I_x_overbar);
+
+    final double[] A_hat = new double[(int)Math.ceil(
+        2 * (1 + (betaU - betaL) / alpha) * I_x_overbar_size) + (kMax - kMin)];
+    int A_hat_size = 0;
+    int missing = 0;
+    for ( int ii = 0; ii < I_x_overbar_size; ++ii ) {
+      final double v_i = votes[I_x_overbar[ii]];
       if ( dm.d(0) / v_i > a_overbar ) continue;
 
-      // otherwise: add all elements between a_underbar and a_overbar
       final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
       final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
       final int maxJ = fuzzyFloor(dm.deltaInvRaw(v_i * a_overbar));
       for ( int j = minJ; j <= maxJ; ++j ) {
         A_hat[A_hat_size++] = dm.d(j) / v_i;
       }
-      k_hat -= minJ; // Elements 0,1,...,minJ-1 missing from A_hat
+      missing += minJ; // Elements 0,1,...,minJ-1 missing from A_hat
     }
+    counters.set(1, A_hat_size);
 
-    // Update benchmark counter
-    lastCandSize = A_hat_size;
+    final int[] ranks = new int[m];
+    for ( int j = 0; j < m; j++ ) {
+      ranks[j] = ks[j] - missing - 1;
+    }
+    final double[] astars = new double[m];
+    RankSelection.multiSelect(A_hat, A_hat_size - 1, ranks, astars);
 
-    // Selection algorithm is zero-based!
-    return RankSelection.select(A_hat, A_hat_size - 1, k_hat - 1);
+    final Apportionment[] result = new Apportionment[m];
+    for ( int i = 0; i < m; i++ ) {
+      final int j = Arrays.binarySearch(ks, houseSizes[i]);
+      result[i] = deriveSeats(new ApportionmentInstance(votes, houseSizes[i]), method, astars[j], false);
+    }
+    return result;
   }
 
   @Override
@@ -119,9 +263,9 @@ public class SandwichSelect extends SelectionBasedAlgorithm implements Algorithm
   public int getLastCounter(int i) {
     switch ( i ) {
       case 0:
-        return lastIx;
+        return counters.get(0);
       case 1:
-        return lastCandSize;
+        return counters.get(1);
       default:
         return -1;
     }
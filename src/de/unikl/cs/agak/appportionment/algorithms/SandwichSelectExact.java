@@ -0,0 +1,185 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.IntegerApportionmentInstance;
+import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.ExactDivisorComparator;
+import de.unikl.cs.agak.appportionment.util.RankSelection;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * {@link SandwichSelect} for integral vote counts, with exact tie detection.
+ * <p/>
+ * Computes a* approximately with {@link SandwichSelect} first. All candidates
+ * whose computed value is further from that than rounding errors can explain
+ * lie on the same side of the exact a* as of the approximate one; only the few
+ * candidates in between are ranked exactly. Seats and ties are then derived
+ * with an {@link ExactDivisorComparator}, so they are exact, and the filter
+ * decides almost all comparisons in <code>double</code> arithmetic.
+ * <p/>
+ * Supports linear divisor methods and
+ * {@link de.unikl.cs.agak.appportionment.methods.examples.EqualProportions}.
+ */
+public class SandwichSelectExact implements AlgorithmWithCounters {
+  /* Interface AlgorithmWithCounters and this member variable are only
+   * for purposes of experiments. In a productive environment, remove both.
+   */
+  private final Counters counters = new Counters(2);
+
+  /**
+   * Relative half-width of the band around the approximate a* that contains the exact one.
+   */
+  private static final double BAND = 4 * ExactDivisorComparator.RELATIVE_ERROR;
+
+  private final SandwichSelect approximate;
+
+  /**
+   * Uses {@link RankSelection#RADIX} for selecting from the candidate set.
+   */
+  public SandwichSelectExact() {
+    this(RankSelection.RADIX);
+  }
+
+  /**
+   * @param selector The selection algorithm to use on the candidate set.
+   */
+  public SandwichSelectExact(final RankSelection.Selector selector) {
+    this.approximate = new SandwichSelect(selector);
+  }
+
+  /**
+   * @throws IllegalArgumentException if there are no exact comparisons for the given method.
+   */
+  public Apportionment apportion(final IntegerApportionmentInstance instance, final DivisorMethod method) {
+    final ExactDivisorComparator cmp = ExactDivisorComparator.forMethod(method);
+    final long[] votes = instance.votes;
+    final double[] dVotes = instance.doubleVotes();
+    final int n = votes.length;
+
+    final double approx = approximate.unitSize(new ApportionmentInstance(dVotes, instance.k), method);
+    final double lo = approx - BAND * approx;
+    final double hi = approx + BAND * approx;
+
+    // Computed values are monotonic in j, so for every party, the candidates
+    // below the band, in the band and above it are consecutive.
+    final int[] seats = new int[n];
+    int below = 0;
+    int[] bandParty = new int[16];
+    int[] bandIndex = new int[16];
+    int bandSize = 0;
+    for ( int i = 0; i < n; i++ ) {
+      final double v = dVotes[i];
+      int j = Math.max(0, method.dRound(v * lo) + 1);
+      while ( j > 0 && method.d(j - 1) / v >= lo ) j--;
+      while ( method.d(j) / v < lo ) j++;
+      seats[i] = j;
+      below += j;
+
+      for ( int l = j; method.d(l) / v <= hi; l++ ) {
+        if ( bandSize == bandParty.length ) {
+          bandParty = Arrays.copyOf(bandParty, 2 * bandSize);
+          bandIndex = Arrays.copyOf(bandIndex, 2 * bandSize);
+        }
+        bandParty[bandSize] = i;
+        bandIndex[bandSize] = l;
+        bandSize++;
+      }
+    }
+    counters.set(0, bandSize);
+
+    final int rank = instance.k - below - 1;
+    if ( rank < 0 || rank >= bandSize ) {
+      // Can only happen if the approximation is off by more than the rounding errors
+      throw new IllegalStateException("Rank " + rank + " not in band of size " + bandSize);
+    }
+
+    // Rank the band exactly; it is small unless there are many (near) ties.
+    final Integer[] order = new Integer[bandSize];
+    for ( int b = 0; b < bandSize; b++ ) {
+      order[b] = b;
+    }
+    final int[] fBandParty = bandParty;
+    final int[] fBandIndex = bandIndex;
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer b, final Integer c) {
+        return cmp.compare(fBandIndex[b], votes[fBandParty[b]], fBandIndex[c], votes[fBandParty[c]]);
+      }
+    });
+    final int tParty = bandParty[order[rank]];
+    final int tIndex = bandIndex[order[rank]];
+    final double astar = method.d(tIndex) / dVotes[tParty];
+
+    // Every party gets its candidates below a*; those equal to a* are tied.
+    final int[] tiedSeats = new int[n];
+    int theOnlyTie = -1;
+    for ( int i = 0; i < n; i++ ) {
+      int c;
+      while ( (c = cmp.compare(seats[i], votes[i], tIndex, votes[tParty])) < 0 ) {
+        seats[i]++;
+      }
+      if ( c == 0 ) {
+        tiedSeats[i] = 1;
+        if ( theOnlyTie == -1 ) theOnlyTie = i;
+        else theOnlyTie = -42;
+      }
+    }
+    if ( theOnlyTie >= 0 ) {
+      tiedSeats[theOnlyTie] = 0;
+      seats[theOnlyTie] += 1;
+    }
+    counters.set(1, cmp.exactComparisons());
+
+    return new Apportionment(instance.k, seats, tiedSeats, astar);
+  }
+
+  @Override
+  public int numberOfCounters() {
+    return 2;
+  }
+
+  @Override
+  public int getLastCounter(int i) {
+    switch ( i ) {
+      case 0:
+        return counters.get(0);
+      case 1:
+        return counters.get(1);
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  public String getCounterLabel(int i) {
+    switch ( i ) {
+      case 0:
+        return "|band|";
+      case 1:
+        return "exact";
+      default:
+        return "NoSuchCounter";
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.util.RadixSelection;
+import de.unikl.cs.agak.appportionment.util.RankSelection;
+
+import java.util.Arrays;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.*;
+
+
+/**
+ * Like {@link SandwichSelect}, but stores candidates as 32-bit floats to halve
+ * memory and memory traffic of the candidate set.
+ * <p/>
+ * Rounding to float is monotone, so a* rounds to the float of rank k in the
+ * candidate set. Only the few candidates that round to that same float are then
+ * recomputed exactly; selecting among those yields the very same a* as
+ * {@link SandwichSelect}.
+ */
+public class SandwichSelectFloat extends SelectionBasedAlgorithm implements AlgorithmWithCounters {
+  /* Interface AlgorithmWithCounters and this member variable are only
+   * for purposes of experiments. In a productive environment, remove both.
+   */
+  private final Counters counters = new Counters(3);
+
+  @Override
+  double unitSize(final ApportionmentInstance instance, final DivisorMethod method) {
+    if (  !(method instanceof AlmostLinearDivisorMethod) ) {
+      throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
+    }
+    DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
+    final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
+    final double alpha = dm.getAlpha();
+    final double betaU = dm.getBetaUpper();
+    final double betaL = dm.getBetaLower();
+
+    final int n = instance.votes.length;
+
+    // Find largest population
+    double maxPop = Double.NEGATIVE_INFINITY;
+    for ( double p : instance.votes ) {
+      if ( p > maxPop ) maxPop = p;
+    }
+    double x_overbar = dm.d(instance.k - 1) / maxPop + 5 * EPSILON;
+    // x_overbar clearly feasible and suboptimal
+
+    final int[] I_x_overbar = new int[n];
+    int I_x_overbar_size = 0;
+    double Sigma_I_x_overbar = 0;
+    for ( int i = 0; i < n; ++i ) {
+      if ( instance.votes[i] > dm.d(0) / x_overbar ) {
+        I_x_overbar[I_x_overbar_size++] = i;
+        Sigma_I_x_overbar += instance.votes[i];
+      }
+    }
+    counters.set(0, I_x_overbar_size);
+
+    final double a_overbar =
+        (alpha * instance.k + betaU * I_x_overbar_size) / Sigma_I_x_overbar;
+    final double a_underbar = Math.max(0,
+        (alpha * instance.k - (alpha - betaL) * I_x_overbar_size) / Sigma_I_x_overbar);
+
+    // Phase 1: select on rounded candidates
+    final float[] A_hat = new float[(int)Math.ceil(
+        2 * (1 + (betaU - betaL) / alpha) * I_x_overbar_size)];
+    int A_hat_size = 0;
+    int k_hat = instance.k;
+
+    for ( int ii = 0; ii < I_x_overbar_size; ++ii ) {
+      final int i = I_x_overbar[ii];
+      double v_i = instance.votes[i];
+      if ( dm.d(0) / v_i > a_overbar ) continue;
+
+      final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
+      final int minJ = realMinJ <= 0 ? 0 : fuzzyCeil(realMinJ);
+      final int maxJ = fuzzyFloor(dm.deltaInvRaw(v_i * a_overbar));
+      for ( int j = minJ; j <= maxJ; ++j ) {
+        A_hat[A_hat_size++] = (float)(dm.d(j) / v_i);
+      }
+      k_hat -= minJ; // Elements 0,1,...,minJ-1 missing from A_hat
+    }
+    counters.set(1, A_hat_size);
+
+    final float fstar = RadixSelection.select(A_hat, A_hat_size - 1, k_hat - 1);
+    // All candidates rounding to fstar are larger than this.
+    final float below_fstar = Math.nextAfter(fstar, Double.NEGATIVE_INFINITY);
+
+    // Phase 2: recompute candidates that round to fstar exactly, and count
+    // those that are smaller. Here, we consider all candidates d(j)/v_i with j >= 0,
+    // so a* has rank k overall; candidates larger than a_overbar can not be
+    // smaller than a* and do no harm.
+    double[] band = new double[16];
+    int band_size = 0;
+    int below = 0;
+    for ( int ii = 0; ii < I_x_overbar_size; ++ii ) {
+      final int i = I_x_overbar[ii];
+      double v_i = instance.votes[i];
+      if ( dm.d(0) / v_i > a_overbar ) continue;
+
+      // Find the first candidate not below fstar; deltaInvRaw gives a close guess.
+      final double guess = dm.deltaInvRaw(v_i * below_fstar);
+      int j = guess <= 0 ? 0 : (int)Math.min(guess, instance.k);
+      while ( j > 0 && (float)(dm.d(j - 1) / v_i) >= fstar ) j--;
+      while ( (float)(dm.d(j) / v_i) < fstar ) j++;
+      below += j;
+
+      for ( ; ; ++j ) {
+        final double a = dm.d(j) / v_i;
+        if ( (float)a != fstar ) break;
+        if ( band_size == band.length ) band = Arrays.copyOf(band, 2 * band_size);
+        band[band_size++] = a;
+      }
+    }
+    counters.set(2, band_size);
+
+    // Selection algorithm is zero-based!
+    return RankSelection.floydRivestSelect(band, band_size - 1, instance.k - 1 - below);
+  }
+
+  @Override
+  public int numberOfCounters() {
+    return 3;
+  }
+
+  @Override
+  public int getLastCounter(int i) {
+    switch ( i ) {
+      case 0:
+        return counters.get(0);
+      case 1:
+        return counters.get(1);
+      case 2:
+        return counters.get(2);
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  public String getCounterLabel(int i) {
+    switch ( i ) {
+      case 0:
+        return "|I_x|";
+      case 1:
+        return "|A|";
+      case 2:
+        return "|A_f|";
+      default:
+        return "NoSuchCounter";
+    }
+  }
+}
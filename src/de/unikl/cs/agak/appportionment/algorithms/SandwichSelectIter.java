@@ -17,7 +17,9 @@ package de.unikl.cs.agak.appportionment.algorithms;
 
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
 import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
 import de.unikl.cs.agak.appportionment.util.RankSelection;
 
@@ -46,15 +48,30 @@ public class SandwichSelectIter extends SelectionBasedAlgorithm implements Algor
   /* Interface AlgorithmWithCounters and this member variable are only
    * for purposes of experiments. In a productive environment, remove both.
    */
-  private int lastIx = -1;
-  private int lastCandSize = -1;
-  private int lastBoundingIters = -1;
+  private final Counters counters = new Counters(3);
+
+  private final RankSelection.Selector selector;
+
+  /**
+   * Uses {@link RankSelection#FLOYD_RIVEST} for selecting from the candidate set.
+   */
+  public SandwichSelectIter() {
+    this(RankSelection.FLOYD_RIVEST);
+  }
+
+  /**
+   * @param selector The selection algorithm to use on the candidate set.
+   */
+  public SandwichSelectIter(final RankSelection.Selector selector) {
+    this.selector = selector;
+  }
 
   @Override
   double unitSize(final ApportionmentInstance instance, final DivisorMethod method) {
     if (  !(method instanceof AlmostLinearDivisorMethod) ) {
       throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
     }
+    DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
     final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
     final double alpha = dm.getAlpha();
     final double betaU = dm.getBetaUpper();
@@ -86,7 +103,7 @@ public class SandwichSelectIter extends SelectionBasedAlgorithm implements Algor
           Sigma_I_x_overbar += instance.votes[i];
         }
       }
-      lastIx = I_x_overbar.size();
+      counters.set(0, I_x_overbar.size());
 
       a_overbar = (alpha * instance.k + betaU * I_x_overbar.size()) / Sigma_I_x_overbar;
       a_underbar = Math.max(0, (alpha * instance.k - (alpha - betaL) * I_x_overbar.size()) / Sigma_I_x_overbar);
@@ -97,7 +114,7 @@ public class SandwichSelectIter extends SelectionBasedAlgorithm implements Algor
     // From the way of how we define the sandwhich bounds, we know that we won't get another improvement now.
 
     // Update benchmark counter
-    lastBoundingIters = iterations;
+    counters.set(2, iterations);
 
     final int A_hat_bound = 2 * I_x_overbar.size();
 
@@ -126,10 +143,10 @@ public class SandwichSelectIter extends SelectionBasedAlgorithm implements Algor
     }
 
     // Update benchmark counter
-    lastCandSize = A_hat_size;
+    counters.set(1, A_hat_size);
 
     // Selection algorithm is zero-based!
-    return RankSelection.select(A_hat, A_hat_size - 1, k_hat - 1);
+    return selector.select(A_hat, A_hat_size - 1, k_hat - 1);
   }
 
   @Override
@@ -141,11 +158,11 @@ public class SandwichSelectIter extends SelectionBasedAlgorithm implements Algor
   public int getLastCounter(int i) {
     switch ( i ) {
       case 0:
-        return lastIx;
+        return counters.get(0);
       case 1:
-        return lastCandSize;
+        return counters.get(1);
       case 2:
-        return lastBoundingIters;
+        return counters.get(2);
       default:
         return -1;
     }
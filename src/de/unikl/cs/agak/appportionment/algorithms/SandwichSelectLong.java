@@ -0,0 +1,257 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.LongApportionment;
+import de.unikl.cs.agak.appportionment.LongApportionmentInstance;
+import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.ExactDivisorComparator;
+import de.unikl.cs.agak.appportionment.util.LinearScans;
+import de.unikl.cs.agak.appportionment.util.RankSelection;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.EPSILON;
+
+/**
+ * {@link SandwichSelect} for house sizes beyond the range of <code>int</code>.
+ * <p/>
+ * The candidate set has at most <code>2(1 + (betaU - betaL)/alpha) n</code>
+ * elements, plus four per party for rounding errors, no matter how large the
+ * house is, so the running time depends only on the number of parties.
+ * <p/>
+ * At these magnitudes, a relative error of one ulp in a* is worth a sizeable
+ * fraction of a seat, so seats and ties are not derived with tolerances.
+ * As in {@link SandwichSelectExact}, the candidates within rounding distance of
+ * the approximate a* are ranked with an {@link ExactDivisorComparator}; for
+ * methods other than linear ones and
+ * {@link de.unikl.cs.agak.appportionment.methods.examples.EqualProportions},
+ * the computed divisors are taken as exact.
+ * <p/>
+ * House sizes must not exceed {@link #MAX_K}.
+ */
+public class SandwichSelectLong implements AlgorithmWithCounters {
+  /**
+   * The largest supported house size, 2^50. Seat indices are then below 2^50,
+   * so computing <code>d(j)</code>, <code>d(j)/v</code> and the inverse is off by
+   * at most <code>3 * 2^-53 * 2^50 < 1/2</code> seat, which the candidate set
+   * covers by widening every party's range by one seat on either side;
+   * cf. {@link ExactDivisorComparator#RELATIVE_ERROR}.
+   */
+  public static final long MAX_K = 1L << 50;
+
+  /**
+   * Relative half-width of the band around the approximate a* that contains the exact one.
+   */
+  private static final double BAND = 4 * ExactDivisorComparator.RELATIVE_ERROR;
+
+  /* Interface AlgorithmWithCounters and this member variable are only
+   * for purposes of experiments. In a productive environment, remove both.
+   */
+  private final Counters counters = new Counters(2);
+
+  private final RankSelection.Selector selector;
+
+  /**
+   * Uses {@link RankSelection#RADIX} for selecting from the candidate set.
+   */
+  public SandwichSelectLong() {
+    this(RankSelection.RADIX);
+  }
+
+  /**
+   * @param selector The selection algorithm to use on the candidate set.
+   */
+  public SandwichSelectLong(final RankSelection.Selector selector) {
+    this.selector = selector;
+  }
+
+  public LongApportionment apportion(final LongApportionmentInstance instance, final DivisorMethod method) {
+    final double approx = unitSize(instance, method);
+    final ExactDivisorComparator cmp = ExactDivisorComparator.forMethodOrComputed(method);
+    final double[] votes = instance.votes;
+    final int n = votes.length;
+    final double lo = approx - BAND * approx;
+    final double hi = approx + BAND * approx;
+
+    // Computed values are monotonic in j, so for every party, the candidates
+    // below the band, in the band and above it are consecutive.
+    final long[] seats = new long[n];
+    long below = 0;
+    int[] bandParty = new int[16];
+    long[] bandIndex = new long[16];
+    int bandSize = 0;
+    for ( int i = 0; i < n; i++ ) {
+      final double v = votes[i];
+      long j = Math.max(0, (long)Math.floor(method.deltaInvRaw(v * lo)));
+      while ( j > 0 && method.d(j - 1) / v >= lo ) j--;
+      while ( method.d(j) / v < lo ) j++;
+      seats[i] = j;
+      below += j;
+
+      for ( long l = j; method.d(l) / v <= hi; l++ ) {
+        if ( bandSize == bandParty.length ) {
+          bandParty = Arrays.copyOf(bandParty, 2 * bandSize);
+          bandIndex = Arrays.copyOf(bandIndex, 2 * bandSize);
+        }
+        bandParty[bandSize] = i;
+        bandIndex[bandSize] = l;
+        bandSize++;
+      }
+    }
+
+    final long rank = instance.k - below - 1;
+    if ( rank < 0 || rank >= bandSize ) {
+      // Can only happen if the approximation is off by more than the rounding errors
+      throw new IllegalStateException("Rank " + rank + " not in band of size " + bandSize);
+    }
+
+    // Rank the band exactly; it is small unless there are many (near) ties.
+    final Integer[] order = new Integer[bandSize];
+    for ( int b = 0; b < bandSize; b++ ) {
+      order[b] = b;
+    }
+    final int[] fBandParty = bandParty;
+    final long[] fBandIndex = bandIndex;
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer b, final Integer c) {
+        return cmp.compare(fBandIndex[b], votes[fBandParty[b]], fBandIndex[c], votes[fBandParty[c]]);
+      }
+    });
+    final int tParty = bandParty[order[(int)rank]];
+    final long tIndex = bandIndex[order[(int)rank]];
+    final double astar = method.d(tIndex) / votes[tParty];
+
+    // Every party gets its candidates below a*; those equal to a* are tied.
+    final int[] tiedSeats = new int[n];
+    int theOnlyTie = -1;
+    for ( int i = 0; i < n; i++ ) {
+      int c;
+      while ( (c = cmp.compare(seats[i], votes[i], tIndex, votes[tParty])) < 0 ) {
+        seats[i]++;
+      }
+      if ( c == 0 ) {
+        tiedSeats[i] = 1;
+        if ( theOnlyTie == -1 ) theOnlyTie = i;
+        else theOnlyTie = -42;
+      }
+    }
+    if ( theOnlyTie >= 0 ) {
+      tiedSeats[theOnlyTie] = 0;
+      seats[theOnlyTie] += 1;
+    }
+
+    return new LongApportionment(instance.k, seats, tiedSeats, astar);
+  }
+
+  double unitSize(final LongApportionmentInstance instance, final DivisorMethod method) {
+    if ( !(method instanceof AlmostLinearDivisorMethod) ) {
+      throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
+    }
+    if ( instance.k < 1 || instance.k > MAX_K ) {
+      throw new IllegalArgumentException("Got k=" + instance.k + ", but need 1 <= k <= " + MAX_K);
+    }
+    DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
+    final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
+    final double alpha = dm.getAlpha();
+    final double betaU = dm.getBetaUpper();
+    final double betaL = dm.getBetaLower();
+
+    final double[] votes = instance.votes;
+    final int n = votes.length;
+
+    // Find largest population
+    final double maxPop = LinearScans.max(votes, n);
+    final double x_overbar_exact = dm.d(instance.k - 1) / maxPop;
+    // Absolute slack vanishes for large a*, so add relative slack, too
+    final double x_overbar = x_overbar_exact + 5 * EPSILON * Math.max(1, x_overbar_exact);
+    // x_overbar clearly feasible and suboptimal
+
+    final int[] I_x_overbar = new int[n];
+    final int I_x_overbar_size = LinearScans.indicesAbove(votes, n, dm.d(0) / x_overbar, I_x_overbar);
+    final double Sigma_I_x_overbar = LinearScans.sum(votes, I_x_overbar, I_x_overbar_size);
+    counters.set(0, I_x_overbar_size);
+
+    final double a_overbar =
+        (alpha * instance.k + betaU * I_x_overbar_size) / Sigma_I_x_overbar;
+    final double a_underbar = Math.max(0,
+        (alpha * instance.k - (alpha - betaL) * I_x_overbar_size) / Sigma_I_x_overbar);
+
+    // Every party's range is widened by one seat on either side; with the
+    // rounding errors of the inverse, that adds less than four candidates per party.
+    final double[] A_hat = new double[(int)Math.ceil(
+        2 * (1 + (betaU - betaL) / alpha) * I_x_overbar_size) + 4 * I_x_overbar_size];
+    int A_hat_size = 0;
+    long k_hat = instance.k;
+
+    for ( int ii = 0; ii < I_x_overbar_size; ++ii ) {
+      final double v_i = votes[I_x_overbar[ii]];
+      if ( dm.d(0) / v_i > a_overbar ) continue;
+
+      final double realMinJ = dm.deltaInvRaw(v_i * a_underbar);
+      final long minJ = realMinJ <= 1 ? 0 : (long)Math.ceil(realMinJ) - 1;
+      final long maxJ = (long)Math.floor(dm.deltaInvRaw(v_i * a_overbar)) + 1;
+      for ( long j = minJ; j <= maxJ; ++j ) {
+        A_hat[A_hat_size++] = dm.d(j) / v_i;
+      }
+      k_hat -= minJ; // Elements 0,1,...,minJ-1 missing from A_hat
+    }
+    counters.set(1, A_hat_size);
+
+    if ( k_hat < 1 || k_hat > A_hat_size ) {
+      // Can only happen if rounding errors exceed the slack of the bounds
+      throw new IllegalStateException("Rank " + k_hat + " not in candidate set of size " + A_hat_size);
+    }
+    // Selection algorithm is zero-based!
+    return selector.select(A_hat, A_hat_size - 1, (int)(k_hat - 1));
+  }
+
+  @Override
+  public int numberOfCounters() {
+    return 2;
+  }
+
+  @Override
+  public int getLastCounter(int i) {
+    switch ( i ) {
+      case 0:
+        return counters.get(0);
+      case 1:
+        return counters.get(1);
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  public String getCounterLabel(int i) {
+    switch ( i ) {
+      case 0:
+        return "|I_x|";
+      case 1:
+        return "|A|";
+      default:
+        return "NoSuchCounter";
+    }
+  }
+}
@@ -17,7 +17,9 @@ package de.unikl.cs.agak.appportionment.algorithms;
 
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
 import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
 import de.unikl.cs.agak.appportionment.util.RankSelection;
 
@@ -41,14 +43,14 @@ public class SandwichSelectV2 extends SelectionBasedAlgorithm implements Algorit
   /* Interface AlgorithmWithCounters and this member variable are only
    * for purposes of experiments. In a productive environment, remove both.
    */
-  private int lastIx = -1;
-  private int lastCandSize = -1;
+  private final Counters counters = new Counters(2);
 
   @Override
   double unitSize(final ApportionmentInstance instance, final DivisorMethod method) {
     if (  !(method instanceof AlmostLinearDivisorMethod) ) {
       throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
     }
+    DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
     final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
     final double alpha = dm.getAlpha();
     final double beta = dm.getBetaUpper();
@@ -70,7 +72,7 @@ public class SandwichSelectV2 extends SelectionBasedAlgorithm implements Algorit
         Sigma_I_x_overbar += instance.votes[i];
       }
     }
-    lastIx = I_x_overbar.size();
+    counters.set(0, I_x_overbar.size());
 
     final double a_overbar =
         (alpha * instance.k + beta * I_x_overbar.size()) / Sigma_I_x_overbar;
@@ -103,7 +105,7 @@ public class SandwichSelectV2 extends SelectionBasedAlgorithm implements Algorit
       k_hat -= minJ; // Elements 0,1,...,minJ-1 missing from A_hat
     }
 
-    lastCandSize = A_hat_size;
+    counters.set(1, A_hat_size);
 
     // Selection algorithm is zero-based!
     return RankSelection.select(A_hat, A_hat_size - 1, k_hat - 1);
@@ -118,9 +120,9 @@ public class SandwichSelectV2 extends SelectionBasedAlgorithm implements Algorit
   public int getLastCounter(int i) {
     switch ( i ) {
       case 0:
-        return lastIx;
+        return counters.get(0);
       case 1:
-        return lastCandSize;
+        return counters.get(1);
       default:
         return -1;
     }
@@ -17,6 +17,7 @@ package de.unikl.cs.agak.appportionment.algorithms;
 
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
 import de.unikl.cs.agak.appportionment.util.RankSelection;
 
@@ -33,6 +34,7 @@ public class SandwichSelectWithOptimalityCheck extends SelectionBasedAlgorithm {
       if (  !(method instanceof AlmostLinearDivisorMethod) ) {
         throw new IllegalArgumentException(this.getClass().getSimpleName() + " only works for almost linear divisor sequences");
       }
+      DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
       final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
       final double alpha = dm.getAlpha();
       final double beta = dm.getBetaUpper();
@@ -18,6 +18,7 @@ package de.unikl.cs.agak.appportionment.algorithms;
 import de.unikl.cs.agak.appportionment.Apportionment;
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
 
 import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyEquals;
 
@@ -28,22 +29,63 @@ abstract public class SelectionBasedAlgorithm implements ApportionmentAlgorithm
 
   @Override
   final public Apportionment apportion(final ApportionmentInstance instance, final DivisorMethod method) {
+    // Compute $a^*$
+    final ApportionmentWorkspace workspace = new ApportionmentWorkspace();
+    final double astar = unitSize(instance, method, workspace);
+
+    return deriveSeats(instance, method, astar, workspace.isTieFree());
+  }
+
+  /**
+   * Derives the seat assignment (including ties) from the proportionality constant.
+   * @param instance An instance of the apportionment problem.
+   * @param astar The (reciprocal of the) proportionality constant as computed by
+   *              {@link #unitSize(ApportionmentInstance, DivisorMethod)}.
+   * @param tieFree If <code>true</code>, the caller guarantees that no candidate
+   *                other than a* itself is (fuzzily) equal to a*, so ties need not
+   *                be searched for.
+   * @return The apportionment for the given instance.
+   */
+  Apportionment deriveSeats(final ApportionmentInstance instance, final DivisorMethod method, final double astar,
+                            final boolean tieFree) {
     final int n = instance.votes.length;
+    final int[] seats = new int[n];
+    final int[] tiedSeats = new int[n];
 
-    // Compute $a^*$
-    final double astar = unitSize(instance, method);
+    deriveSeats(instance, method, astar, tieFree, seats, tiedSeats);
+
+    return new Apportionment(instance.k, seats, tiedSeats, astar);
+  }
+
+  /**
+   * Like {@link #deriveSeats(ApportionmentInstance, DivisorMethod, double, boolean)}, but writes
+   * the result into the first <code>n</code> entries of the given arrays.
+   */
+  static void deriveSeats(final ApportionmentInstance instance, final DivisorMethod method, final double astar,
+                          final boolean tieFree, final int[] seats, final int[] tiedSeats) {
+    final int n = instance.votes.length;
 
     // Derive seats
-    final int[] seats = new int[n];
-    for ( int i = 0; i < n; i++ ) {
-      seats[i] = method.dRound(instance.votes[i] * astar) + 1;
+    method.dRoundAll(instance.votes, astar, seats);
+
+    if ( tieFree ) {
+      // The only seat with value astar is the k-th one; nothing to undo.
+      for ( int i = 0; i < n; i++ ) {
+        tiedSeats[i] = 0;
+      }
+      return;
     }
 
     // Now we have *all* seats with value astar, which may be too many.
     // Identify ties for the last few seats!
+    if ( method instanceof LinearDivisorMethod ) {
+      final LinearDivisorMethod ldm = (LinearDivisorMethod)method;
+      deriveTiesLinear(instance.votes, ldm.getAlpha(), ldm.getBeta(), astar, seats, tiedSeats);
+      return;
+    }
     int theOnlyTie = -1;
-    final int[] tiedSeats = new int[n];
     for ( int i = 0; i < n; i++ ) {
+      tiedSeats[i] = 0;
       if ( seats[i] == 0 ) {
         if ( fuzzyEquals(method.d(0) / instance.votes[i], astar) ) {
           tiedSeats[i] = 1;
@@ -64,8 +106,35 @@ abstract public class SelectionBasedAlgorithm implements ApportionmentAlgorithm
       tiedSeats[theOnlyTie] = 0;
       seats[theOnlyTie] += 1;
     }
+  }
 
-    return new Apportionment(instance.k, seats, tiedSeats, astar);
+  /**
+   * The tie pass of {@link #deriveSeats(ApportionmentInstance, DivisorMethod, double, boolean, int[], int[])}
+   * for <code>d(j) = alpha * j + beta</code>.
+   */
+  private static void deriveTiesLinear(final double[] votes, final double alpha, final double beta,
+                                       final double astar, final int[] seats, final int[] tiedSeats) {
+    final int n = votes.length;
+    int theOnlyTie = -1;
+    for ( int i = 0; i < n; i++ ) {
+      tiedSeats[i] = 0;
+      if ( seats[i] == 0 ) {
+        if ( fuzzyEquals(beta / votes[i], astar) ) {
+          // Cannot happen; see generic version
+          throw new IllegalStateException();
+        }
+      }
+      else if ( fuzzyEquals((alpha * (seats[i] - 1) + beta) / votes[i], astar) ) {
+        tiedSeats[i] = 1;
+        seats[i] -= 1;
+        if ( theOnlyTie == -1 ) theOnlyTie = i;
+        else theOnlyTie = -42;
+      }
+    }
+    if ( theOnlyTie >= 0 ) {
+      tiedSeats[theOnlyTie] = 0;
+      seats[theOnlyTie] += 1;
+    }
   }
 
   /**
@@ -73,4 +142,13 @@ abstract public class SelectionBasedAlgorithm implements ApportionmentAlgorithm
    * @return The (reciprocal of the) proportionality constant (a*).
    */
   abstract double unitSize(ApportionmentInstance instance, DivisorMethod method);
+
+  /**
+   * Like {@link #unitSize(ApportionmentInstance, DivisorMethod)}, but may use the
+   * buffers of the given workspace and record in it whether a* is free of ties.
+   */
+  double unitSize(final ApportionmentInstance instance, final DivisorMethod method,
+                  final ApportionmentWorkspace workspace) {
+    return unitSize(instance, method);
+  }
 }
@@ -0,0 +1,220 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.algorithms;
+
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.experiments.AlgorithmWithCounters;
+import de.unikl.cs.agak.appportionment.experiments.Counters;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.EPSILON;
+
+
+/**
+ * Computes a* without materializing any candidate set, hence with only constant
+ * extra memory beyond the input.
+ * <p/>
+ * We keep thresholds <code>lo &lt; a* &lt;= hi</code> and probe values in between;
+ * a probe counts the candidates <code>d(j)/v_i</code> up to the threshold, using
+ * {@link DivisorMethod#dRound(double)} per party. Thresholds are chosen by
+ * interpolating the counts, which are almost linear in the threshold, falling back
+ * to bisection if that does not make enough progress. Each probe also finds the
+ * candidates right next to its threshold, so we are done as soon as a probe lands
+ * next to a*, even if a* is heavily tied.
+ * <p/>
+ * For {@link AlmostLinearDivisorMethod}s, the initial thresholds are the sandwich
+ * bounds of {@link SandwichSelect}; other methods work, too, but start from a wider
+ * interval.
+ */
+public class ThresholdSearch extends SelectionBasedAlgorithm implements AlgorithmWithCounters {
+  /* Interface AlgorithmWithCounters and this member variable are only
+   * for purposes of experiments. In a productive environment, remove both.
+   */
+  private final Counters counters = new Counters(1);
+
+  /**
+   * Result of a probe at threshold x.
+   */
+  private static final class Probe {
+    /**
+     * Number of candidates <code>&lt;= x</code>
+     */
+    long count;
+    /**
+     * Smallest candidate <code>&gt; x</code> and how often it occurs
+     */
+    double next;
+    int nextMult;
+    /**
+     * Largest candidate <code>&lt;= x</code> and how often it occurs
+     */
+    double prev;
+    int prevMult;
+    /**
+     * Number of probes so far
+     */
+    int probes = 0;
+
+    void probe(final ApportionmentInstance instance, final DivisorMethod method, final double x) {
+      count = 0;
+      next = Double.POSITIVE_INFINITY;
+      nextMult = 0;
+      prev = Double.NEGATIVE_INFINITY;
+      prevMult = 0;
+      probes++;
+
+      for ( final double v : instance.votes ) {
+        // Number of candidates of this party up to x; fix up what fuzzy rounding did.
+        int j = method.dRound(v * x) + 1;
+        while ( j > 0 && method.d(j - 1) / v > x ) j--;
+        while ( method.d(j) / v <= x ) j++;
+        count += j;
+
+        final double a = method.d(j) / v;
+        if ( a < next ) {
+          next = a;
+          nextMult = 1;
+        }
+        else if ( a == next ) {
+          nextMult++;
+        }
+
+        if ( j > 0 ) {
+          final double b = method.d(j - 1) / v;
+          if ( b > prev ) {
+            prev = b;
+            prevMult = 1;
+          }
+          else if ( b == prev ) {
+            prevMult++;
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  double unitSize(final ApportionmentInstance instance, final DivisorMethod method) {
+    final Probe p = new Probe();
+    final double astar = search(instance, method, p);
+    counters.set(0, p.probes);
+    return astar;
+  }
+
+  private static double search(final ApportionmentInstance instance, final DivisorMethod method, final Probe p) {
+    final int k = instance.k;
+
+    // Find largest population
+    double maxPop = Double.NEGATIVE_INFINITY;
+    for ( double v : instance.votes ) {
+      if ( v > maxPop ) maxPop = v;
+    }
+    // The largest party alone has k candidates up to here.
+    final double x_overbar = method.d(k - 1) / maxPop;
+
+    double lo = 0;
+    double hi = x_overbar;
+    if ( method instanceof AlmostLinearDivisorMethod ) {
+      // Sandwich bounds as in SandwichSelect, without storing I_x
+      DerivedAlmostLinearMethod.checkHouseSize(method, instance.k);
+      final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)method;
+      final double x = x_overbar + 5 * EPSILON;
+      int I_x_size = 0;
+      double Sigma_I_x = 0;
+      for ( final double v : instance.votes ) {
+        if ( v > dm.d(0) / x ) {
+          I_x_size++;
+          Sigma_I_x += v;
+        }
+      }
+      lo = Math.max(0, (dm.getAlpha() * k - (dm.getAlpha() - dm.getBetaLower()) * I_x_size) / Sigma_I_x);
+      hi = Math.min(x_overbar, (dm.getAlpha() * k + dm.getBetaUpper() * I_x_size) / Sigma_I_x);
+    }
+
+    // Establish lo < a* <= hi; the bounds are only fuzzily correct.
+    p.probe(instance, method, hi);
+    if ( p.count < k ) {
+      hi = x_overbar;
+      p.probe(instance, method, hi);
+    }
+    if ( p.count - p.prevMult < k ) return p.prev;
+    long hiCount = p.count;
+
+    p.probe(instance, method, lo);
+    if ( p.count >= k ) {
+      lo = 0;
+      p.probe(instance, method, lo);
+      if ( p.count >= k ) return p.prev; // = 0, the smallest possible candidate
+    }
+    long loCount = p.count;
+
+    boolean bisect = false;
+    while ( true ) {
+      if ( p.count < k && p.count + p.nextMult >= k ) return p.next;
+      if ( p.count >= k && p.count - p.prevMult < k ) return p.prev;
+
+      // Candidates grow almost linearly, so interpolate the rank we look for.
+      double x = lo + (hi - lo) * ((k - 0.5 - loCount) / (hiCount - loCount));
+      if ( bisect || !(x > lo && x < hi) ) {
+        x = lo + (hi - lo) / 2;
+      }
+      if ( !(x > lo && x < hi) ) {
+        // lo and hi are adjacent doubles, so a* = hi.
+        return hi;
+      }
+
+      final long gap = hiCount - loCount;
+      p.probe(instance, method, x);
+      if ( p.count < k ) {
+        lo = x;
+        loCount = p.count;
+      }
+      else {
+        hi = x;
+        hiCount = p.count;
+      }
+      bisect = hiCount - loCount > gap / 2;
+    }
+  }
+
+  @Override
+  public int numberOfCounters() {
+    return 1;
+  }
+
+  @Override
+  public int getLastCounter(int i) {
+    switch ( i ) {
+      case 0:
+        return counters.get(0);
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  public String getCounterLabel(int i) {
+    switch ( i ) {
+      case 0:
+        return "#probes";
+      default:
+        return "NoSuchCounter";
+    }
+  }
+}
@@ -21,8 +21,8 @@ package de.unikl.cs.agak.appportionment.experiments;
  * we use this <strong>unsafe hack</strong> for getting counters.</p>
  *
  * <p>Method {@link AlgorithmWithCounters#getLastCounter(int)} return the value stored by the last
- * run of the algorithm. This is <em>not</em> assumed to be thread-safe,
- * so you better use each instance in a sequential fashion.</p>
+ * run of the algorithm on the calling thread; cf. {@link Counters}.
+ * Thus, instances may still be shared between threads.</p>
  *
  * @author Raphael Reitzig (reitzig@cs.uni-kl.de)
  */
@@ -33,9 +33,9 @@ public interface AlgorithmWithCounters {
   int numberOfCounters();
 
     /**
-     * <strong>Warning:</strong> this is not thread-safe!
      * @param i Counter index, starting with 0.
-     * @return The value stored by the i-th counter by the last run of the algorithm.
+     * @return The value stored by the i-th counter by the last run of the algorithm
+     *    on the calling thread.
      *    The result is not specified if <code>i < 0</code> or <code>i >= numberOfCounters()</code>.
      */
     int getLastCounter(int i);
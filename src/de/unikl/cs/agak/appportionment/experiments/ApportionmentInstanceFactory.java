@@ -68,6 +68,37 @@ public class ApportionmentInstanceFactory {
     }
   };
 
+  /**
+   * The names of all vote distributions known to {@link #voteFactory(String)}.
+   */
+  static final String[] VOTE_DISTRIBUTIONS = new String[] {
+      "uniform", "exponential", "poisson", "pareto1.5", "pareto2", "pareto3"
+  };
+
+  /**
+   * @param inputType One of {@link #VOTE_DISTRIBUTIONS}.
+   * @return The factory for the given vote distribution.
+   * @throws IllegalArgumentException if there is no such distribution.
+   */
+  static VoteFactory voteFactory(final String inputType) {
+    switch ( inputType ) {
+      case "uniform":
+        return UniformVotes;
+      case "exponential":
+        return ExponentialVotes;
+      case "poisson":
+        return PoissonVotes;
+      case "pareto1.5":
+        return Pareto1_5Votes;
+      case "pareto2":
+        return Pareto2Votes;
+      case "pareto3":
+        return Pareto3Votes;
+      default:
+        throw new IllegalArgumentException("Unknown input type " + inputType);
+    }
+  }
+
   static ApportionmentInstance randomInstance(final SedgewickRandom random, final VoteFactory vf, final int n, final KFactory k) {
     final double[] votes = new double[n];
     for ( int i = 0; i < votes.length; i++ ) {
@@ -0,0 +1,53 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import java.util.Arrays;
+
+/**
+ * Storage for the counters of an {@link AlgorithmWithCounters}.
+ * Values are kept per thread, so algorithm instances stay safe for concurrent use;
+ * each thread sees the counters of its own last run.
+ */
+public final class Counters {
+  private final ThreadLocal<int[]> values;
+
+  /**
+   * @param number The number of counters.
+   */
+  public Counters(final int number) {
+    values = new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() {
+        final int[] initial = new int[number];
+        Arrays.fill(initial, -1);
+        return initial;
+      }
+    };
+  }
+
+  public void set(final int i, final int value) {
+    values.get()[i] = value;
+  }
+
+  /**
+   * @return The value the current thread has last set counter i to, or -1 if none.
+   */
+  public int get(final int i) {
+    return values.get()[i];
+  }
+}
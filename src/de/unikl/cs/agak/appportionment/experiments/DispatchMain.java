@@ -0,0 +1,85 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.ApportionmentAlgorithm;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Measures how much an algorithm suffers from calls to divisor methods that
+ * have become megamorphic. Warms up either with the measured method only
+ * (<code>single</code>) or with all known methods in turn (<code>mixed</code>),
+ * with the same number of runs, and then times the measured method.
+ * Since the JIT compiler never forgets what it has seen, compare runs of
+ * separate JVMs.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class DispatchMain {
+  public static void main(String[] args) throws Exception {
+    if ( args.length < 2 ) {
+      System.out.println("Usage: DispatchMain single|mixed algo [method] [n] [k/n] [warmups] [repetitions] [seed]");
+      return;
+    }
+    final boolean mixed = "mixed".equals(args[0]);
+    final ApportionmentAlgorithm alg = RunningTimeMain.algoInstance(args[1]);
+    final AlmostLinearDivisorMethod dm = RunningTimeMain.dmInstance(args.length >= 3 ? args[2] : "SainteLague");
+    final int n = args.length >= 4 ? Integer.parseInt(args[3]) : 20000;
+    final int kFactor = args.length >= 5 ? Integer.parseInt(args[4]) : 5;
+    final int warmups = args.length >= 6 ? Integer.parseInt(args[5]) : 2000;
+    final int repetitions = args.length >= 7 ? Integer.parseInt(args[6]) : 200;
+    final long seed = args.length >= 8 ? Long.parseLong(args[7]) : System.currentTimeMillis();
+
+    final List<AlmostLinearDivisorMethod> warmupMethods = new ArrayList<>();
+    warmupMethods.add(dm);
+    if ( mixed ) {
+      for ( final String name : RunningTimeMain.methods.keySet() ) {
+        warmupMethods.add(RunningTimeMain.dmInstance(name));
+      }
+      warmupMethods.add(new LinearDivisorMethod(1.5, 0.7));
+    }
+
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    final ApportionmentInstance instance = ApportionmentInstanceFactory.randomInstance(random,
+        ApportionmentInstanceFactory.UniformVotes, n, new ApportionmentInstanceFactory.KFactory(kFactor));
+
+    for ( int r = 0; r < warmups; r++ ) {
+      alg.apportion(instance, warmupMethods.get(r % warmupMethods.size()));
+    }
+
+    final long start = System.nanoTime();
+    for ( int r = 0; r < repetitions; r++ ) {
+      alg.apportion(instance, dm);
+    }
+    final double millis = (System.nanoTime() - start) / 1000. / 1000 / repetitions;
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "algo", "dm", "warmup", "n", "k", "ms");
+    writeSeparatedLine(out, alg.getClass().getSimpleName(), dm.toString(), args[0], String.valueOf(n),
+        String.valueOf(instance.k), String.valueOf(millis));
+  }
+}
@@ -0,0 +1,135 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.ApportionmentAlgorithm;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorTable;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Measures the cost of the divisor method primitives with and without
+ * {@link DivisorTable}: evaluating <code>d(j)</code>, rounding one by one with
+ * {@link DivisorMethod#dRound(double)} versus in bulk with
+ * {@link DivisorMethod#dRoundAll(double[], double, int[])}, and complete
+ * apportionments with the given algorithms.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class DivisorTableMain {
+  public static void main(String[] args) throws Exception {
+    final int n = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+    final int kFactor = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+    final int repetitions = args.length >= 3 ? Integer.parseInt(args[2]) : 20;
+    final long seed = args.length >= 4 ? Long.parseLong(args[3]) : System.currentTimeMillis();
+    final String[] methods = (args.length >= 5 ? args[4] : "EqualProportions,HarmonicMean,ModifiedSainteLague,SainteLague")
+        .split("\\s*,\\s*");
+    final String[] algos = (args.length >= 6 ? args[5] : "rw,dmpq").split("\\s*,\\s*");
+
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    final ApportionmentInstance instance = ApportionmentInstanceFactory.randomInstance(random,
+        ApportionmentInstanceFactory.UniformVotes, n, new ApportionmentInstanceFactory.KFactory(kFactor));
+    final int[] seats = new int[n];
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "dm", "operation", "variant", "ns-per-op");
+
+    for ( final String name : methods ) {
+      final AlmostLinearDivisorMethod dm = RunningTimeMain.dmInstance(name);
+      final DivisorTable table = DivisorTable.of(dm);
+      final int bound = table.bound();
+
+      // d(j) for all tabulated j
+      for ( final DivisorMethod m : new DivisorMethod[]{dm, table} ) {
+        writeSeparatedLine(out, dm.toString(), "d(j)", m == dm ? "plain" : "table",
+            String.valueOf(timeD(m, bound, repetitions)));
+      }
+
+      // Rounding all parties for a* = k / (sum of votes)
+      double sum = 0;
+      for ( final double v : instance.votes ) {
+        sum += v;
+      }
+      final double astar = instance.k / sum;
+      writeSeparatedLine(out, dm.toString(), "dRound", "loop",
+          String.valueOf(timeDRound(dm, instance.votes, astar, seats, repetitions, false)));
+      writeSeparatedLine(out, dm.toString(), "dRound", "dRoundAll",
+          String.valueOf(timeDRound(dm, instance.votes, astar, seats, repetitions, true)));
+
+      for ( final String algo : algos ) {
+        final ApportionmentAlgorithm alg = RunningTimeMain.algoInstance(algo);
+        for ( final DivisorMethod m : new DivisorMethod[]{dm, table} ) {
+          alg.apportion(instance, m);
+          final long start = System.nanoTime();
+          for ( int r = 0; r < repetitions; r++ ) {
+            alg.apportion(instance, m);
+          }
+          writeSeparatedLine(out, dm.toString(), alg.getClass().getSimpleName(), m == dm ? "plain" : "table",
+              String.valueOf((double)(System.nanoTime() - start) / repetitions / n));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return Nanoseconds per evaluation of <code>d(j)</code>, for <code>j = 0, ..., bound - 1</code>.
+   */
+  private static double timeD(final DivisorMethod dm, final int bound, final int repetitions) {
+    double sink = 0;
+    // First run is warmup
+    for ( int j = 0; j < bound; j++ ) {
+      sink += dm.d(j);
+    }
+    final long start = System.nanoTime();
+    for ( int r = 0; r < repetitions; r++ ) {
+      for ( int j = 0; j < bound; j++ ) {
+        sink += dm.d(j);
+      }
+    }
+    final double nanos = (double)(System.nanoTime() - start) / repetitions / bound;
+    // Use the sum so that the loop is not eliminated
+    return sink > 0 ? nanos : -nanos;
+  }
+
+  /**
+   * @return Nanoseconds per party for rounding all parties.
+   */
+  private static double timeDRound(final DivisorMethod dm, final double[] votes, final double astar,
+                                   final int[] seats, final int repetitions, final boolean bulk) {
+    long start = 0;
+    for ( int r = 0; r <= repetitions; r++ ) {
+      // First run is warmup
+      if ( r == 1 ) start = System.nanoTime();
+      if ( bulk ) {
+        dm.dRoundAll(votes, astar, seats);
+      }
+      else {
+        for ( int i = 0; i < votes.length; i++ ) {
+          seats[i] = dm.dRound(votes[i] * astar) + 1;
+        }
+      }
+    }
+    return (double)(System.nanoTime() - start) / repetitions / votes.length;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.LongApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.SandwichSelect;
+import de.unikl.cs.agak.appportionment.algorithms.SandwichSelectLong;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.examples.SainteLague;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Measures {@link SandwichSelectLong} for house sizes of <code>10^e</code> seats
+ * per party, for the given exponents. Where the house size fits into an
+ * <code>int</code>, {@link SandwichSelect} is measured on the same instance for
+ * comparison.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class HugeHouseMain {
+  public static void main(String[] args) throws Exception {
+    final int n = args.length >= 1 ? Integer.parseInt(args[0]) : 1000;
+    final String[] exponents = (args.length >= 2 ? args[1] : "0,3,6,8,10,11").split("\\s*,\\s*");
+    final int repetitions = args.length >= 3 ? Integer.parseInt(args[2]) : 100;
+    final long seed = args.length >= 4 ? Long.parseLong(args[3]) : System.currentTimeMillis();
+    final AlmostLinearDivisorMethod dm = args.length >= 5
+        ? RunningTimeMain.dmInstance(args[4])
+        : new SainteLague();
+    final ApportionmentInstanceFactory.VoteFactory vf = args.length >= 6
+        ? ApportionmentInstanceFactory.voteFactory(args[5])
+        : ApportionmentInstanceFactory.UniformVotes;
+
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    final double[] votes = new double[n];
+    for ( int i = 0; i < n; i++ ) {
+      votes[i] = vf.next(random);
+    }
+
+    final SandwichSelectLong alg = new SandwichSelectLong();
+    final SandwichSelect intAlg = new SandwichSelect();
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "algo", "dm", "n", "k", "k/n", "ms", "|I_x|", "|A|");
+
+    for ( final String e : exponents ) {
+      final long perParty = (long)Math.pow(10, Integer.parseInt(e));
+      if ( perParty > SandwichSelectLong.MAX_K / n ) {
+        throw new IllegalArgumentException("House size 10^" + e + " * " + n + " exceeds " + SandwichSelectLong.MAX_K);
+      }
+      final long k = perParty * n;
+      final LongApportionmentInstance instance = new LongApportionmentInstance(votes, k);
+
+      // First run is warmup
+      alg.apportion(instance, dm);
+      long start = System.nanoTime();
+      for ( int r = 0; r < repetitions; r++ ) {
+        alg.apportion(instance, dm);
+      }
+      double millis = (System.nanoTime() - start) / 1000. / 1000 / repetitions;
+      writeSeparatedLine(out, alg.getClass().getSimpleName(), dm.toString(), String.valueOf(n), String.valueOf(k),
+          String.valueOf(perParty), String.valueOf(millis),
+          String.valueOf(alg.getLastCounter(0)), String.valueOf(alg.getLastCounter(1)));
+
+      if ( k <= Integer.MAX_VALUE ) {
+        final ApportionmentInstance intInstance = new ApportionmentInstance(votes, (int)k);
+        intAlg.apportion(intInstance, dm);
+        start = System.nanoTime();
+        for ( int r = 0; r < repetitions; r++ ) {
+          intAlg.apportion(intInstance, dm);
+        }
+        millis = (System.nanoTime() - start) / 1000. / 1000 / repetitions;
+        writeSeparatedLine(out, intAlg.getClass().getSimpleName(), dm.toString(), String.valueOf(n),
+            String.valueOf(k), String.valueOf(perParty), String.valueOf(millis),
+            String.valueOf(intAlg.getLastCounter(0)), String.valueOf(intAlg.getLastCounter(1)));
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.LiveApportionment;
+import de.unikl.cs.agak.appportionment.algorithms.SandwichSelect;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.examples.SainteLague;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Load simulator for {@link LiveApportionment}: replays a recorded stream of
+ * precinct results and reports how many recomputations were needed and how long
+ * deltas took to be published. The final result is checked against
+ * {@link SandwichSelect} on the final tallies.
+ * <p/>
+ * A stream file has one report per line, <code>millis party votes</code>
+ * separated by whitespace, ordered by time; lines starting with <code>#</code>
+ * are ignored. With <code>--record</code>, a synthetic stream is written instead:
+ * every precinct reports votes for all parties at a random time, and some
+ * precincts later send corrections.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class LiveMain {
+  private static final double CORRECTION_PROBABILITY = 0.02;
+
+  public static void main(String[] args) throws Exception {
+    if ( args.length >= 1 && "--record".equals(args[0]) ) {
+      if ( args.length < 4 ) usage();
+      final int n = Integer.parseInt(args[2]);
+      final int precincts = Integer.parseInt(args[3]);
+      final int seconds = args.length >= 5 ? Integer.parseInt(args[4]) : 60;
+      final long seed = args.length >= 6 ? Long.parseLong(args[5]) : System.currentTimeMillis();
+      record(args[1], n, precincts, seconds * 1000L, seed);
+      return;
+    }
+    if ( args.length < 1 ) usage();
+
+    final List<long[]> reports = new ArrayList<>();
+    final List<Double> votes = new ArrayList<>();
+    int n = 0;
+    try ( final BufferedReader in = new BufferedReader(new FileReader(args[0])) ) {
+      String line;
+      while ( (line = in.readLine()) != null ) {
+        line = line.trim();
+        if ( line.isEmpty() || line.startsWith("#") ) continue;
+        final String[] fields = line.split("\\s+");
+        final int party = Integer.parseInt(fields[1]);
+        reports.add(new long[]{Long.parseLong(fields[0]), party});
+        votes.add(Double.parseDouble(fields[2]));
+        n = Math.max(n, party + 1);
+      }
+    }
+    final int k = args.length >= 2 ? Integer.parseInt(args[1]) : 10 * n;
+    final long budget = args.length >= 3 ? Long.parseLong(args[2]) : 100;
+    final double speedup = args.length >= 4 ? Double.parseDouble(args[3]) : 1.0;
+    final AlmostLinearDivisorMethod dm = args.length >= 5
+        ? RunningTimeMain.dmInstance(args[4])
+        : new SainteLague();
+
+    final long[] updates = new long[1];
+    final long[] published = new long[1];
+    final long[] maxLatency = new long[1];
+    final long[] sumLatency = new long[1];
+    final LiveApportionment live = new LiveApportionment(new ApportionmentInstance(new double[n], k), dm,
+        budget, TimeUnit.MILLISECONDS, new LiveApportionment.Subscriber() {
+      @Override
+      public void onUpdate(final LiveApportionment.Update update) {
+        // Only called on the worker thread
+        updates[0]++;
+        published[0] += update.parties.length;
+        sumLatency[0] += update.latencyNanos;
+        maxLatency[0] = Math.max(maxLatency[0], update.latencyNanos);
+      }
+    });
+
+    // Replay in real time (divided by speedup)
+    final double[] tally = new double[n];
+    final long start = System.nanoTime();
+    for ( int r = 0; r < reports.size(); r++ ) {
+      final long due = start + (long)(reports.get(r)[0] * 1000000 / speedup);
+      final long wait = due - System.nanoTime();
+      if ( wait > 0 ) TimeUnit.NANOSECONDS.sleep(wait);
+
+      final int party = (int)reports.get(r)[1];
+      live.submit(party, votes.get(r));
+      tally[party] += votes.get(r);
+    }
+    live.flush();
+    final double millis = (System.nanoTime() - start) / 1000. / 1000;
+    final Apportionment result = live.snapshot();
+    live.awaitTermination();
+
+    // Check against recomputing from scratch on the parties with votes
+    boolean correct = true;
+    if ( result != null ) {
+      int present = 0;
+      for ( final double v : tally ) {
+        if ( v > 0 ) present++;
+      }
+      final double[] presentVotes = new double[present];
+      final int[] presentSeats = new int[present];
+      final int[] presentTiedSeats = new int[present];
+      for ( int i = 0, j = 0; i < n; i++ ) {
+        if ( tally[i] > 0 ) {
+          presentVotes[j] = tally[i];
+          presentSeats[j] = result.seats[i];
+          presentTiedSeats[j] = result.tiedSeats[i];
+          j++;
+        }
+      }
+      final Apportionment expected = new SandwichSelect().apportion(new ApportionmentInstance(presentVotes, k), dm);
+      correct = Arrays.equals(expected.seats, presentSeats) && Arrays.equals(expected.tiedSeats, presentTiedSeats);
+    }
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "dm", "n", "k", "budget-ms", "speedup", "deltas", "total-ms", "updates",
+        "published-parties", "mean-latency-ms", "max-latency-ms", "correct");
+    writeSeparatedLine(out, dm.toString(), String.valueOf(n), String.valueOf(k), String.valueOf(budget),
+        String.valueOf(speedup), String.valueOf(reports.size()), String.valueOf(millis), String.valueOf(updates[0]),
+        String.valueOf(published[0]),
+        String.valueOf(updates[0] > 0 ? sumLatency[0] / 1e6 / updates[0] : 0),
+        String.valueOf(maxLatency[0] / 1e6), String.valueOf(correct));
+    if ( !correct ) System.exit(1);
+  }
+
+  /**
+   * Writes a synthetic stream of precinct results.
+   */
+  private static void record(final String file, final int n, final int precincts, final long millis,
+                             final long seed) throws Exception {
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    final double[] strength = new double[n];
+    for ( int i = 0; i < n; i++ ) {
+      strength[i] = random.uniform(1.0, 2.0);
+    }
+
+    final List<long[]> lines = new ArrayList<>();
+    for ( int p = 0; p < precincts; p++ ) {
+      final long time = (long)random.uniform(0.0, millis);
+      final double size = random.uniform(500.0, 5000.0);
+      for ( int i = 0; i < n; i++ ) {
+        final long votes = Math.round(size * strength[i] / n * random.uniform(0.5, 1.5));
+        lines.add(new long[]{time, i, votes});
+        if ( random.bernoulli(CORRECTION_PROBABILITY) ) {
+          final long later = time + (long)random.uniform(0.0, millis - time);
+          lines.add(new long[]{later, i, -Math.round(votes * random.uniform(0.0, 0.1))});
+        }
+      }
+    }
+    Collections.sort(lines, new Comparator<long[]>() {
+      @Override
+      public int compare(final long[] a, final long[] b) {
+        return Long.compare(a[0], b[0]);
+      }
+    });
+
+    try ( final BufferedWriter out = new BufferedWriter(new FileWriter(file)) ) {
+      out.write("# millis party votes; n=" + n + ", precincts=" + precincts + ", seed=" + seed);
+      out.newLine();
+      for ( final long[] line : lines ) {
+        out.write(line[0] + " " + line[1] + " " + line[2]);
+        out.newLine();
+      }
+    }
+  }
+
+  private static void usage() {
+    System.out.println("Usage: LiveMain stream-file [k] [latency-budget-ms] [speedup] [method]");
+    System.out.println("       LiveMain --record stream-file n precincts [seconds] [seed]");
+    System.exit(42);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.ApportionmentAlgorithm;
+import de.unikl.cs.agak.appportionment.algorithms.PackedBatch;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.examples.SainteLague;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Compares {@link PackedBatch} with apportioning the same many small instances
+ * one by one, with the given algorithms.
+ * Instances have 5 to 20 parties and house sizes of 2 to 5 seats per party.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class PackedBatchMain {
+  private static final int MIN_N = 5;
+  private static final int MAX_N = 20;
+
+  public static void main(String[] args) throws Exception {
+    final int m = args.length >= 1 ? Integer.parseInt(args[0]) : 1000000;
+    final int repetitions = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+    final long seed = args.length >= 3 ? Long.parseLong(args[2]) : System.currentTimeMillis();
+    final AlmostLinearDivisorMethod dm = args.length >= 4
+        ? RunningTimeMain.dmInstance(args[3])
+        : new SainteLague();
+    final String[] algos = (args.length >= 5 ? args[4] : "rw,dmpq,puls").split("\\s*,\\s*");
+
+    // Sample instances and pack them
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    final ApportionmentInstanceFactory.KFactory k = new ApportionmentInstanceFactory.KFactory(2, 5);
+    final ApportionmentInstance[] instances = new ApportionmentInstance[m];
+    final int[] offsets = new int[m + 1];
+    final int[] ks = new int[m];
+    for ( int i = 0; i < m; i++ ) {
+      instances[i] = ApportionmentInstanceFactory.randomInstance(random, ApportionmentInstanceFactory.UniformVotes,
+          random.uniform(MIN_N, MAX_N + 1), k);
+      offsets[i + 1] = offsets[i] + instances[i].votes.length;
+      ks[i] = instances[i].k;
+    }
+    final double[] votes = new double[offsets[m]];
+    for ( int i = 0; i < m; i++ ) {
+      System.arraycopy(instances[i].votes, 0, votes, offsets[i], instances[i].votes.length);
+    }
+    final int[] seats = new int[votes.length];
+    final int[] tiedSeats = new int[votes.length];
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "algo", "dm", "instances", "parties", "ms-per-batch", "instances/s", "speedup-of-packed");
+
+    // Packed kernel; first run is warmup
+    PackedBatch.apportion(votes, offsets, ks, dm, seats, tiedSeats);
+    long start = System.nanoTime();
+    for ( int r = 0; r < repetitions; r++ ) {
+      PackedBatch.apportion(votes, offsets, ks, dm, seats, tiedSeats);
+    }
+    final double packedMillis = (System.nanoTime() - start) / 1000. / 1000 / repetitions;
+    writeSeparatedLine(out, "PackedBatch", dm.toString(), String.valueOf(m), String.valueOf(votes.length),
+        String.valueOf(packedMillis), String.valueOf(m / packedMillis * 1000), "1.0");
+
+    for ( final String algo : algos ) {
+      final ApportionmentAlgorithm alg = RunningTimeMain.algoInstance(algo);
+
+      // Warmup, and make sure results agree
+      for ( int i = 0; i < m; i++ ) {
+        final Apportionment a = alg.apportion(instances[i], dm);
+        for ( int j = 0; j < a.seats.length; j++ ) {
+          if ( a.seats[j] != seats[offsets[i] + j] || a.tiedSeats[j] != tiedSeats[offsets[i] + j] ) {
+            throw new IllegalStateException("PackedBatch and " + alg.getClass().getSimpleName()
+                + " disagree on instance " + i);
+          }
+        }
+      }
+
+      start = System.nanoTime();
+      for ( int r = 0; r < repetitions; r++ ) {
+        for ( int i = 0; i < m; i++ ) {
+          alg.apportion(instances[i], dm);
+        }
+      }
+      final double millis = (System.nanoTime() - start) / 1000. / 1000 / repetitions;
+      writeSeparatedLine(out, alg.getClass().getSimpleName(), dm.toString(), String.valueOf(m),
+          String.valueOf(votes.length), String.valueOf(millis), String.valueOf(m / millis * 1000),
+          String.valueOf(millis / packedMillis));
+    }
+  }
+}
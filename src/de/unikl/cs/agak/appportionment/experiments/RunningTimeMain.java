@@ -221,29 +221,7 @@ public class RunningTimeMain {
 
           for ( int inputNr = 1; inputNr <= inputsPerN; ++inputNr ) {
             System.out.println("\t\tinputNr=" + inputNr + now());
-            final VoteFactory vf;
-            switch ( inputType ) {
-              case "uniform":
-                vf = UniformVotes;
-                break;
-              case "exponential":
-                vf = ExponentialVotes;
-                break;
-              case "poisson":
-                vf = PoissonVotes;
-                break;
-              case "pareto1.5":
-                vf = Pareto1_5Votes;
-                break;
-              case "pareto2":
-                vf = Pareto2Votes;
-                break;
-              case "pareto3":
-                vf = Pareto3Votes;
-                break;
-              default:
-                throw new IllegalArgumentException("Unknown input type " + inputType);
-            }
+            final VoteFactory vf = voteFactory(inputType);
             final ApportionmentInstance input = ApportionmentInstanceFactory.randomInstance(random, vf, n, k);
             Apportionment app = null;
 
@@ -479,17 +457,25 @@ public class RunningTimeMain {
     //algorithms.put("SelectAstarNaive", SandwichSelectNaive.class);
     //algorithms.put("SelectAstarOptimalityCheck", SandwichSelectWithOptimalityCheck.class);
     algorithms.put("SandwichSelect", SandwichSelect.class);
+    algorithms.put("ParallelSandwichSelect", ParallelSandwichSelect.class);
+    algorithms.put("SandwichSelectFloat", SandwichSelectFloat.class);
+    algorithms.put("ThresholdSearch", ThresholdSearch.class);
     algorithms.put("ChengEppsteinSelect", ChengEppsteinSelect.class);
     algorithms.put("IterativeDMLS", IterativeDMLS.class);
     algorithms.put("IterativeDMPQ", IterativeDMPQ.class);
+    algorithms.put("IterativeDMRadix", IterativeDMRadix.class);
     algorithms.put("PukelsheimLS", PukelsheimLS.class);
     algorithms.put("PukelsheimPQ", PukelsheimPQ.class);
 
     algAbbreviations.put("rw", "SandwichSelect");
+    algAbbreviations.put("prw", "ParallelSandwichSelect");
+    algAbbreviations.put("rwf", "SandwichSelectFloat");
+    algAbbreviations.put("ts", "ThresholdSearch");
     algAbbreviations.put("rwit", "SandwichSelectIter");
     algAbbreviations.put("ce", "ChengEppsteinSelect");
     algAbbreviations.put("dmls", "IterativeDMLS");
     algAbbreviations.put("dmpq", "IterativeDMPQ");
+    algAbbreviations.put("dmrx", "IterativeDMRadix");
     algAbbreviations.put("puls", "PukelsheimLS");
     algAbbreviations.put("pupq", "PukelsheimPQ");
 
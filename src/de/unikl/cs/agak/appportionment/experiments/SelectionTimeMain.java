@@ -0,0 +1,114 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.SandwichSelect;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.RankSelection;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Compares the selection algorithms from {@link RankSelection} on the candidate
+ * sets that {@link SandwichSelect} actually selects from, for all vote
+ * distributions of {@link ApportionmentInstanceFactory}.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class SelectionTimeMain {
+  private static final RankSelection.Selector[] SELECTORS = new RankSelection.Selector[] {
+      RankSelection.QUICKSELECT, RankSelection.FLOYD_RIVEST, RankSelection.RADIX
+  };
+
+  public static void main(String[] args) throws Exception {
+    if ( args.length < 1 ) {
+      System.out.println(
+          "Usage: SelectionTimeMain n1,n2,... [c] [repetitions-per-input] [seed] [method]");
+      System.exit(42);
+    }
+
+    final String[] nsArray = args[0].split("\\s*,\\s*");
+    final int c = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+    final int repetitions = args.length >= 3 ? Integer.parseInt(args[2]) : 10;
+    final long seed = args.length >= 4 ? Long.parseLong(args[3]) : System.currentTimeMillis();
+    final AlmostLinearDivisorMethod dm = args.length >= 5
+        ? RunningTimeMain.dmInstance(args[4])
+        : new LinearDivisorMethod(2, 1);
+    final ApportionmentInstanceFactory.KFactory k = new ApportionmentInstanceFactory.KFactory(c);
+
+    // Records the candidate set passed to the selection algorithm
+    final List<double[]> candidates = new ArrayList<>(1);
+    final int[] rank = new int[1];
+    final SandwichSelect recorder = new SandwichSelect(new RankSelection.Selector() {
+      @Override
+      public double select(double[] a, int hi, int k) {
+        candidates.add(Arrays.copyOf(a, hi + 1));
+        rank[0] = k;
+        return RankSelection.FLOYD_RIVEST.select(a, hi, k);
+      }
+    });
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "input-type", "dm", "n", "k", "|A|", "selector", "single-run-ms", "single-run-ns/|A|");
+
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    for ( final String inputType : ApportionmentInstanceFactory.VOTE_DISTRIBUTIONS ) {
+      for ( final String nString : nsArray ) {
+        final int n = Integer.parseInt(nString);
+        final ApportionmentInstance instance = ApportionmentInstanceFactory.randomInstance(
+            random, ApportionmentInstanceFactory.voteFactory(inputType), n, k);
+
+        candidates.clear();
+        recorder.apportion(instance, dm);
+        final double[] A_hat = candidates.get(0);
+
+        final double expected = RankSelection.FLOYD_RIVEST.select(Arrays.copyOf(A_hat, A_hat.length), A_hat.length - 1, rank[0]);
+        for ( final RankSelection.Selector selector : SELECTORS ) {
+          // Warmup, and make sure all selectors agree
+          for ( int r = 0; r < repetitions; r++ ) {
+            final double result = selector.select(Arrays.copyOf(A_hat, A_hat.length), A_hat.length - 1, rank[0]);
+            if ( result != expected ) {
+              throw new IllegalStateException(selector + " selected " + result + " instead of " + expected);
+            }
+          }
+
+          long nanos = 0;
+          for ( int r = 0; r < repetitions; r++ ) {
+            final double[] copy = Arrays.copyOf(A_hat, A_hat.length);
+            final long start = System.nanoTime();
+            selector.select(copy, copy.length - 1, rank[0]);
+            nanos += System.nanoTime() - start;
+          }
+
+          final double perRunMillis = nanos / 1000. / 1000 / repetitions;
+          writeSeparatedLine(out, inputType, dm.toString(), String.valueOf(n), String.valueOf(instance.k),
+              String.valueOf(A_hat.length), selector.toString(), String.valueOf(perRunMillis),
+              String.valueOf(perRunMillis * 1000 * 1000 / A_hat.length));
+        }
+      }
+    }
+  }
+}
@@ -17,16 +17,32 @@ package de.unikl.cs.agak.appportionment.experiments;
 
 import de.unikl.cs.agak.appportionment.Apportionment;
 import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.IntegerApportionmentInstance;
+import de.unikl.cs.agak.appportionment.LongApportionment;
+import de.unikl.cs.agak.appportionment.LongApportionmentInstance;
 import de.unikl.cs.agak.appportionment.algorithms.*;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DerivedAlmostLinearMethod;
 import de.unikl.cs.agak.appportionment.methods.DivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.DivisorTable;
 import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
 import de.unikl.cs.agak.appportionment.methods.examples.*;
+import de.unikl.cs.agak.appportionment.util.RankSelection;
 import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.unikl.cs.agak.appportionment.experiments.ApportionmentInstanceFactory.UniformVotes;
 import static de.unikl.cs.agak.appportionment.util.AssortedUtils.isBinary;
@@ -47,6 +63,7 @@ public class TestMain {
   private static final int REPS = 1000;
   private static final double MIN_ALPHA = 1.0;
   private static final double MAX_ALPHA = 2.0;
+  private static final int ALLOCATION_ROUNDS = 5;
   private static final DivisorMethod[] METHODS = new DivisorMethod[] {
       new Danish(), new EqualProportions(), new GreatestDivisors(), new HarmonicMean(), new Imperiali(),
       new ModifiedSainteLague(), new SainteLague(), new SmallestDivisors()
@@ -56,10 +73,16 @@ public class TestMain {
   private static List<Class<? extends ApportionmentAlgorithm>> algs = Arrays.asList(
       IterativeDMLS.class,
       IterativeDMPQ.class,
+      IterativeDMRadix.class,
       PukelsheimLS.class,
       PukelsheimPQ.class,
       ChengEppsteinSelect.class,
       SandwichSelect.class,
+      ThreeWaySandwichSelect.class,
+      SandwichSelectFloat.class,
+      ThresholdSearch.class,
+      ParallelSandwichSelect.class,
+      EagerParallelSandwichSelect.class,
       SandwichSelectIter.class,
       SandwichSelectV2.class,
       SandwichSelectNaive.class,
@@ -256,6 +279,14 @@ public class TestMain {
               }
             }
           }
+          else if ( "#probes".equals(awc.getCounterLabel(0)) ) {
+            // This is ThresholdSearch.
+            // At least every other probe bisects, and doubles have 64 bits.
+            if ( awc.getLastCounter(0) < 1 || awc.getLastCounter(0) > 4 + 2 * 64 ) {
+              errors.add("Weird number of probes: " + awc.getLastCounter(0));
+              correct = false;
+            }
+          }
           else {
             errors.add("Untested counter '" + awc.getCounterLabel(0) + "'");
             correct = false;
@@ -272,6 +303,943 @@ public class TestMain {
         System.out.println(alg.getSimpleName() + " is correct. Hopefully.");
       }
     }
+
+    System.out.println();
+    testAllocationFreeness(tests);
+
+    System.out.println();
+    testSelection(r);
+
+    System.out.println();
+    testBatch(tests);
+
+    System.out.println();
+    testIncremental(tests, r);
+
+    System.out.println();
+    testDynamic(tests, r);
+
+    System.out.println();
+    testLive(tests, r);
+
+    System.out.println();
+    testSweep(tests);
+
+    System.out.println();
+    // Integral votes from few values cause many ties
+    final List<ApportionmentInstance> tied = new ArrayList<>(tests.size());
+    for ( final ApportionmentInstance inst : tests ) {
+      final double[] votes = new double[inst.votes.length];
+      for ( int i = 0; i < votes.length; i++ ) {
+        votes[i] = Math.ceil(inst.votes[i]);
+      }
+      tied.add(new ApportionmentInstance(votes, inst.k));
+    }
+    for ( final DivisorMethod dm : Arrays.asList(new SainteLague(), new EqualProportions()) ) {
+      testPackedBatch(tests, dm);
+      testPackedBatch(tied, dm);
+    }
+
+    System.out.println();
+    testPreparedVotes(tests, tied, r);
+
+    System.out.println();
+    testHouseSizes(tests, tied);
+
+    System.out.println();
+    testLongSeats(tests, tied, r);
+
+    System.out.println();
+    testExact(tests);
+
+    System.out.println();
+    testDivisorTable(tests, r);
+
+    System.out.println();
+    testDerivedBounds(tests);
+  }
+
+  /**
+   * Checks {@link SandwichSelect} with bounds derived by {@link DerivedAlmostLinearMethod}
+   * against the hand-made bounds of the test methods, and against {@link IterativeDMPQ}
+   * for a method without known bounds and inverse.
+   */
+  private static void testDerivedBounds(final List<ApportionmentInstanceWithMethod> tests) throws Exception {
+    // Increasing since the derivative 1 + 0.3 cos(x) is positive
+    final DivisorMethod wavy = new DivisorMethod() {
+      @Override
+      public double d(int j) {
+        return j + 0.4 + 0.3 * Math.sin(j);
+      }
+
+      @Override
+      public double deltaInvRaw(double y) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean isStationary() {
+        return false;
+      }
+    };
+
+    for ( final ApportionmentInstanceWithMethod inst : tests ) {
+      final DerivedAlmostLinearMethod derived = DerivedAlmostLinearMethod.derive(inst.dm, inst.k);
+      final Apportionment expected = new SandwichSelect().apportion(inst, inst.dm);
+      final Apportionment actual = new SandwichSelect().apportion(inst, derived);
+      if ( !Arrays.equals(expected.seats, actual.seats) || !Arrays.equals(expected.tiedSeats, actual.tiedSeats) ) {
+        printError(Arrays.asList("SandwichSelect differs with derived bounds for " + inst.dm + ": alpha="
+            + derived.getAlpha() + ", beta in [" + derived.getBetaLower() + ", " + derived.getBetaUpper() + "]"),
+            inst, expected, actual);
+        return;
+      }
+
+      final DerivedAlmostLinearMethod derivedWavy = DerivedAlmostLinearMethod.derive(wavy, inst.k);
+      if ( !derivedWavy.hasNumericInverse() ) {
+        printError(Arrays.asList("Derived method should invert numerically"), derivedWavy);
+        return;
+      }
+      final Apportionment expectedWavy = new IterativeDMPQ().apportion(inst, wavy);
+      final Apportionment actualWavy = new SandwichSelect().apportion(inst, derivedWavy);
+      if ( !assignmentSet(expectedWavy).equals(assignmentSet(actualWavy)) ) {
+        printError(Arrays.asList("SandwichSelect with derived bounds differs from IterativeDMPQ"),
+            inst, expectedWavy, actualWavy);
+        return;
+      }
+    }
+
+    // Every engine that uses the bounds must refuse house sizes beyond them
+    final ApportionmentInstanceWithMethod inst = tests.get(0);
+    final DerivedAlmostLinearMethod tooSmall = DerivedAlmostLinearMethod.derive(inst.dm, inst.k - 1);
+    final List<String> accepted = new LinkedList<>();
+    // Sainte-Lague, but not declared almost linear
+    final DivisorMethod plain = new DivisorMethod() {
+      @Override
+      public double d(int j) {
+        return j + 0.5;
+      }
+
+      @Override
+      public double deltaInvRaw(double y) {
+        return y - 0.5;
+      }
+
+      @Override
+      public boolean isStationary() {
+        return true;
+      }
+    };
+    for ( final Class<? extends ApportionmentAlgorithm> algClass : algs ) {
+      final ApportionmentAlgorithm alg = algClass.getConstructor().newInstance();
+      // Those that reject other methods rely on the bounds; ThresholdSearch uses them if there are any.
+      if ( !(alg instanceof ThresholdSearch) ) {
+        try {
+          alg.apportion(inst, plain);
+          continue;
+        } catch ( IllegalArgumentException e ) {
+          // relies on the bounds
+        }
+      }
+      try {
+        alg.apportion(inst, tooSmall);
+        accepted.add(alg.getClass().getSimpleName());
+      } catch ( IllegalArgumentException e ) {
+        // expected
+      }
+    }
+    try {
+      new SandwichSelect().apportionHouseSizes(inst.votes, new int[]{1, inst.k}, tooSmall);
+      accepted.add("SandwichSelect.apportionHouseSizes");
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+    try {
+      new SandwichSelectLong().apportion(new LongApportionmentInstance(inst.votes, inst.k), tooSmall);
+      accepted.add("SandwichSelectLong");
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+    try {
+      new PreparedVotes(inst.votes).apportion(inst.k, tooSmall);
+      accepted.add("PreparedVotes");
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+    try {
+      final int n = inst.votes.length;
+      PackedBatch.apportion(inst.votes, new int[]{0, n}, new int[]{inst.k}, tooSmall, new int[n], new int[n]);
+      accepted.add("PackedBatch");
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+    if ( !accepted.isEmpty() ) {
+      printError(Arrays.asList("Accepted k=" + inst.k + " beyond derived bounds: " + accepted), tooSmall);
+      return;
+    }
+    System.out.println("DerivedAlmostLinearMethod is correct. Hopefully.");
+  }
+
+  /**
+   * Checks that algorithms compute the same results with a {@link DivisorTable}
+   * as with the method it wraps, with a bound small enough that both table
+   * lookups and fallbacks occur, and that the bulk rounding of the methods
+   * agrees with rounding one by one.
+   */
+  private static void testDivisorTable(final List<ApportionmentInstanceWithMethod> tests, final SedgewickRandom r) {
+    for ( final ApportionmentInstanceWithMethod inst : tests ) {
+      final AlmostLinearDivisorMethod dm = (AlmostLinearDivisorMethod)inst.dm;
+      final DivisorTable table = DivisorTable.of(dm, 2 * MAX_N * FACT_K / inst.votes.length);
+      for ( final ApportionmentAlgorithm alg : Arrays.asList(new SandwichSelect(), new IterativeDMPQ()) ) {
+        final Apportionment expected = alg.apportion(inst, dm);
+        final Apportionment actual = alg.apportion(inst, table);
+        if ( !Arrays.equals(expected.seats, actual.seats) || !Arrays.equals(expected.tiedSeats, actual.tiedSeats) ) {
+          printError(Arrays.asList(alg.getClass().getSimpleName() + " differs with " + table), inst, expected, actual);
+          return;
+        }
+      }
+
+      final double[] ys = new double[inst.votes.length];
+      for ( int i = 0; i < ys.length; i++ ) {
+        // Include values right at the steps
+        ys[i] = i % 2 == 0 ? r.uniform(0.0, 100.0) : dm.d(r.uniform(100));
+      }
+      final int[] seats = new int[ys.length];
+      dm.dRoundAll(ys, 1.0, seats);
+      for ( int i = 0; i < ys.length; i++ ) {
+        if ( seats[i] != dm.dRound(ys[i]) + 1 ) {
+          printError(Arrays.asList("dRoundAll gives " + seats[i] + " instead of " + (dm.dRound(ys[i]) + 1)
+              + " for " + ys[i]), dm);
+          return;
+        }
+      }
+    }
+
+    // Shared only between methods that the parameters identify
+    if ( DivisorTable.of(new SainteLague()) != DivisorTable.of(new SainteLague()) ) {
+      printError(Arrays.asList("DivisorTable.of does not share tables of equal methods"));
+      return;
+    }
+    final DerivedAlmostLinearMethod small = DerivedAlmostLinearMethod.derive(new SainteLague(), 10);
+    final DerivedAlmostLinearMethod large = DerivedAlmostLinearMethod.derive(new SainteLague(), 1000);
+    if ( DivisorTable.of(small).getMethod() != small || DivisorTable.of(large).getMethod() != large ) {
+      printError(Arrays.asList("DivisorTable.of shares tables of different derived methods"));
+      return;
+    }
+    System.out.println("DivisorTable is correct. Hopefully.");
+  }
+
+  /**
+   * Checks {@link SandwichSelectExact} against {@link SandwichSelect} on integral
+   * versions of the test instances, and on a few instances whose ties (or non-ties)
+   * are below {@link de.unikl.cs.agak.appportionment.util.FuzzyNumerics#EPSILON}.
+   */
+  private static void testExact(final List<ApportionmentInstanceWithMethod> tests) {
+    final SandwichSelectExact alg = new SandwichSelectExact();
+    for ( final ApportionmentInstanceWithMethod inst : tests ) {
+      final long[] scaled = new long[inst.votes.length];
+      final long[] ceiled = new long[inst.votes.length];
+      for ( int i = 0; i < scaled.length; i++ ) {
+        scaled[i] = Math.round(1000 * inst.votes[i]);
+        ceiled[i] = (long)Math.ceil(inst.votes[i]);
+      }
+      for ( final long[] votes : Arrays.asList(scaled, ceiled) ) {
+        for ( final DivisorMethod dm : Arrays.asList(inst.dm, new EqualProportions()) ) {
+          if ( !(dm instanceof LinearDivisorMethod || dm instanceof EqualProportions) ) continue;
+          final IntegerApportionmentInstance exact = new IntegerApportionmentInstance(votes, inst.k);
+          final Apportionment expected = new SandwichSelect().apportion(
+              new ApportionmentInstance(exact.doubleVotes(), inst.k), dm);
+          final Apportionment actual = alg.apportion(exact, dm);
+          if ( !Arrays.equals(expected.seats, actual.seats) || !Arrays.equals(expected.tiedSeats, actual.tiedSeats) ) {
+            printError(Arrays.asList("SandwichSelectExact differs from SandwichSelect for " + dm), exact, expected, actual);
+            return;
+          }
+        }
+      }
+    }
+
+    // Seat values 1/v and 1/(v+1) differ by less than EPSILON, so only one is the last seat
+    final long big = 3000000000000000L;
+    if ( !checkExact(alg, new long[]{big, big + 1}, 1, new SainteLague(), new int[]{0, 1}, new int[]{0, 0}) ) return;
+    if ( !checkExact(alg, new long[]{big, big}, 1, new SainteLague(), new int[]{0, 0}, new int[]{1, 1}) ) return;
+    // sqrt(1*2)/c = sqrt(8*9)/(6c), but the computed values differ in the last bit
+    final long c = 100000000000000L;
+    if ( !checkExact(alg, new long[]{c, 6 * c}, 10, new EqualProportions(), new int[]{1, 8}, new int[]{1, 1}) ) return;
+    if ( !checkExact(alg, new long[]{c, 6 * c + 1}, 10, new EqualProportions(), new int[]{1, 9}, new int[]{0, 0}) ) return;
+
+    System.out.println("SandwichSelectExact is correct. Hopefully.");
+  }
+
+  private static boolean checkExact(final SandwichSelectExact alg, final long[] votes, final int k,
+                                    final DivisorMethod dm, final int[] seats, final int[] tiedSeats) {
+    final IntegerApportionmentInstance instance = new IntegerApportionmentInstance(votes, k);
+    final Apportionment actual = alg.apportion(instance, dm);
+    if ( !Arrays.equals(seats, actual.seats) || !Arrays.equals(tiedSeats, actual.tiedSeats) ) {
+      printError(Arrays.asList("SandwichSelectExact should assign " + Arrays.toString(seats) + " with ties "
+          + Arrays.toString(tiedSeats)), instance, actual);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks {@link SandwichSelectLong} against {@link SandwichSelect} on the test
+   * instances, and against exact seat values for house sizes of
+   * 10^6 to 10^12 seats per party and up to {@link SandwichSelectLong#MAX_K}.
+   */
+  private static void testLongSeats(final List<ApportionmentInstanceWithMethod> tests,
+                                    final List<ApportionmentInstance> tied, final SedgewickRandom r) {
+    final SandwichSelectLong alg = new SandwichSelectLong();
+    for ( int t = 0; t < tests.size(); t++ ) {
+      final ApportionmentInstanceWithMethod inst = tests.get(t);
+      final List<ApportionmentInstance> same = inst.dm instanceof AlmostLinearDivisorMethod
+          ? Arrays.asList(inst, tied.get(t)) : Arrays.asList(tied.get(t));
+      for ( final ApportionmentInstance small : same ) {
+        final DivisorMethod dm = small == inst ? inst.dm : new EqualProportions();
+        final Apportionment expected = new SandwichSelect().apportion(small, dm);
+        final LongApportionment actual = alg.apportion(new LongApportionmentInstance(small.votes, small.k), dm);
+        boolean equal = Arrays.equals(expected.tiedSeats, actual.tiedSeats);
+        for ( int i = 0; i < expected.seats.length && equal; i++ ) {
+          equal = expected.seats[i] == actual.seats[i];
+        }
+        if ( !equal ) {
+          printError(Arrays.asList("SandwichSelectLong differs from SandwichSelect for " + dm), small, expected, actual);
+          return;
+        }
+      }
+
+      if ( !(inst.dm instanceof AlmostLinearDivisorMethod) ) continue;
+      final LinearDivisorMethod ldm = inst.dm instanceof LinearDivisorMethod
+          ? (LinearDivisorMethod)inst.dm : new SainteLague();
+      final long perParty = (long)Math.pow(10, r.uniform(6, 13));
+      final long k = Math.min(SandwichSelectLong.MAX_K, perParty * inst.votes.length + r.uniform(inst.votes.length));
+      if ( !checkLongApportionment(alg, inst.votes, k, ldm) ) return;
+    }
+
+    // Up to MAX_K, and for many integral vote counts with almost-ties
+    final double[] few = new double[]{3, 7, 11};
+    for ( final long k : new long[]{1L << 49, 100000000000000L + 1, 1000000000000000L,
+        SandwichSelectLong.MAX_K - 1, SandwichSelectLong.MAX_K} ) {
+      if ( !checkLongApportionment(alg, few, k, new SainteLague()) ) return;
+      if ( !checkLongApportionment(alg, few, k, new GreatestDivisors()) ) return;
+    }
+    final double[] many = new double[1000];
+    for ( int i = 0; i < many.length; i++ ) {
+      many[i] = 1 + r.uniform(1000000);
+    }
+    if ( !checkLongApportionment(alg, many, 1000000000000000L + 7, new SainteLague()) ) return;
+    if ( !checkLongApportionment(alg, many, SandwichSelectLong.MAX_K, new SmallestDivisors()) ) return;
+
+    System.out.println("SandwichSelectLong is correct. Hopefully.");
+  }
+
+  /**
+   * Checks the result of {@link SandwichSelectLong} against exact seat values:
+   * without ties, all assigned seats are worth strictly less than all others;
+   * with ties, all tied parties' next seats are worth exactly the same, and
+   * strictly more than every assigned seat and strictly less than every other one.
+   */
+  private static boolean checkLongApportionment(final SandwichSelectLong alg, final double[] votes, final long k,
+                                                final LinearDivisorMethod dm) {
+    final LongApportionmentInstance instance = new LongApportionmentInstance(votes, k);
+    final LongApportionment result = alg.apportion(instance, dm);
+    final List<String> errors = new LinkedList<>();
+    final long assigned = result.assignedSeats();
+    final long tied = sum(result.tiedSeats);
+    if ( !isBinary(result.tiedSeats) ) {
+      errors.add("Tied seats are not binary");
+    }
+    if ( tied == 0 ? assigned != k : assigned >= k || assigned + tied < k || tied < 2 ) {
+      errors.add(assigned + " seats plus " + tied + " tied ones do not match k=" + k);
+    }
+
+    // Largest assigned seat, smallest tied seat and smallest other seat; -1 for none
+    int last = -1;
+    int tie = -1;
+    int next = -1;
+    for ( int i = 0; i < votes.length; i++ ) {
+      if ( result.seats[i] > 0 && (last < 0
+          || compareSeatValues(dm, result.seats[i] - 1, votes[i], result.seats[last] - 1, votes[last]) > 0) ) {
+        last = i;
+      }
+      if ( result.tiedSeats[i] == 1 ) {
+        if ( tie >= 0 && compareSeatValues(dm, result.seats[i], votes[i], result.seats[tie], votes[tie]) != 0 ) {
+          errors.add("Parties " + tie + " and " + i + " are tied with different seat values");
+        }
+        tie = i;
+      }
+      else if ( next < 0 || compareSeatValues(dm, result.seats[i], votes[i], result.seats[next], votes[next]) < 0 ) {
+        next = i;
+      }
+    }
+    final int upper = tie >= 0 ? tie : next;
+    if ( last >= 0 && upper >= 0
+        && compareSeatValues(dm, result.seats[last] - 1, votes[last], result.seats[upper], votes[upper]) >= 0 ) {
+      errors.add("Party " + last + " has a seat worth at least the next one of party " + upper);
+    }
+    if ( tie >= 0 && next >= 0
+        && compareSeatValues(dm, result.seats[tie], votes[tie], result.seats[next], votes[next]) >= 0 ) {
+      errors.add("Party " + next + " misses a seat worth at most the tied ones");
+    }
+
+    if ( !errors.isEmpty() ) {
+      printError(errors, instance, result);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compares <code>d(j)/v</code> with <code>d(l)/w</code> exactly, in decimal arithmetic.
+   */
+  private static int compareSeatValues(final LinearDivisorMethod dm, final long j, final double v,
+                                       final long l, final double w) {
+    final BigDecimal alpha = new BigDecimal(dm.getAlpha());
+    final BigDecimal beta = new BigDecimal(dm.getBeta());
+    final BigDecimal left = alpha.multiply(BigDecimal.valueOf(j)).add(beta).multiply(new BigDecimal(w));
+    final BigDecimal right = alpha.multiply(BigDecimal.valueOf(l)).add(beta).multiply(new BigDecimal(v));
+    return left.compareTo(right);
+  }
+
+  /**
+   * Checks {@link SandwichSelect#apportionHouseSizes} against separate calls of
+   * {@link SandwichSelect#apportion} for each house size.
+   */
+  private static void testHouseSizes(final List<ApportionmentInstanceWithMethod> tests,
+                                     final List<ApportionmentInstance> tied) {
+    for ( int t = 0; t < tests.size(); t++ ) {
+      final ApportionmentInstanceWithMethod inst = tests.get(t);
+      final int[] ks = new int[]{inst.k, inst.k / 3 + 1, 3 * inst.k, inst.k};
+      if ( inst.dm instanceof AlmostLinearDivisorMethod
+          && !checkHouseSizes(inst.votes, ks, inst.dm) ) return;
+      if ( !checkHouseSizes(tied.get(t).votes, ks, new EqualProportions()) ) return;
+    }
+    System.out.println("SandwichSelect for several house sizes is correct. Hopefully.");
+  }
+
+  private static boolean checkHouseSizes(final double[] votes, final int[] ks, final DivisorMethod dm) {
+    final SandwichSelect alg = new SandwichSelect();
+    final Apportionment[] results = alg.apportionHouseSizes(votes, ks, dm);
+    for ( int j = 0; j < ks.length; j++ ) {
+      final ApportionmentInstance inst = new ApportionmentInstance(votes, ks[j]);
+      final Apportionment expected = alg.apportion(inst, dm);
+      if ( results[j].k != ks[j] || !Arrays.equals(expected.seats, results[j].seats)
+          || !Arrays.equals(expected.tiedSeats, results[j].tiedSeats) ) {
+        printError(Arrays.asList("apportionHouseSizes differs from apportion for " + dm), inst, expected, results[j]);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks {@link PreparedVotes} against {@link SandwichSelect} for several house sizes,
+   * on the test instances with their methods, on the tie-heavy instances and on
+   * large instances.
+   */
+  private static void testPreparedVotes(final List<ApportionmentInstanceWithMethod> tests,
+                                        final List<ApportionmentInstance> tied, final SedgewickRandom r) {
+    for ( int t = 0; t < tests.size(); t++ ) {
+      final ApportionmentInstanceWithMethod inst = tests.get(t);
+      final PreparedVotes prepared = new PreparedVotes(inst.votes);
+      final PreparedVotes preparedTied = new PreparedVotes(tied.get(t).votes);
+      for ( final int k : new int[]{inst.k, inst.k / 3 + 1, 3 * inst.k} ) {
+        if ( inst.dm instanceof AlmostLinearDivisorMethod
+            && !checkPreparedVotes(prepared, k, (AlmostLinearDivisorMethod)inst.dm) ) return;
+        if ( !checkPreparedVotes(preparedTied, k, new EqualProportions()) ) return;
+      }
+    }
+    // More than 1024 candidates, so that radix selection makes passes of its own
+    final double[] many = new double[5000];
+    for ( int rep = 0; rep < 5; rep++ ) {
+      for ( int i = 0; i < many.length; i++ ) {
+        many[i] = UniformVotes.next(r);
+      }
+      if ( !checkPreparedVotes(new PreparedVotes(many), 3 * many.length, new SainteLague()) ) return;
+    }
+    System.out.println("PreparedVotes is correct. Hopefully.");
+  }
+
+  private static boolean checkPreparedVotes(final PreparedVotes prepared, final int k,
+                                            final AlmostLinearDivisorMethod dm) {
+    final int n = prepared.size();
+    final PreparedVotes.Result result = prepared.apportion(k, dm);
+    final int[] seats = new int[n];
+    final int[] tiedSeats = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      seats[i] = result.seats(i);
+      tiedSeats[i] = result.tiedSeats(i);
+    }
+    final Apportionment full = result.toApportionment();
+
+    final ApportionmentInstance inst = new ApportionmentInstance(prepared.votes(), k);
+    final Apportionment expected = new SandwichSelect().apportion(inst, dm);
+    if ( !Arrays.equals(expected.seats, seats) || !Arrays.equals(expected.tiedSeats, tiedSeats)
+        || !Arrays.equals(expected.seats, full.seats) || !Arrays.equals(expected.tiedSeats, full.tiedSeats) ) {
+      printError(Arrays.asList("PreparedVotes differs from SandwichSelect for " + dm), inst, expected, full);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks {@link IncrementalApportionment} against recomputing from scratch
+   * with {@link PukelsheimPQ}, for a couple of rounds of few random changes.
+   */
+  private static void testIncremental(final List<ApportionmentInstanceWithMethod> tests, final SedgewickRandom r) {
+    final PukelsheimPQ alg = new PukelsheimPQ();
+    for ( final ApportionmentInstanceWithMethod inst : tests ) {
+      final double[] votes = Arrays.copyOf(inst.votes, inst.votes.length);
+      final IncrementalApportionment inc =
+          new IncrementalApportionment(inst, inst.dm, alg.apportion(inst, inst.dm));
+      for ( int round = 0; round < 3; round++ ) {
+        final int[] parties = new int[r.uniform(1, 4)];
+        final double[] newVotes = new double[parties.length];
+        for ( int j = 0; j < parties.length; j++ ) {
+          parties[j] = r.uniform(votes.length);
+          // Sometimes copy another party's votes to provoke ties
+          newVotes[j] = r.bernoulli(0.25) ? votes[r.uniform(votes.length)] : votes[parties[j]] * r.uniform(0.2, 5.0);
+          votes[parties[j]] = newVotes[j];
+        }
+        inc.update(parties, newVotes);
+
+        final ApportionmentInstance changed = new ApportionmentInstance(Arrays.copyOf(votes, votes.length), inst.k);
+        final Apportionment expected = alg.apportion(changed, inst.dm);
+        final Apportionment actual = inc.toApportionment();
+        if ( !assignmentSet(expected).equals(assignmentSet(actual)) ) {
+          printError(Arrays.asList("IncrementalApportionment differs from PukelsheimPQ for " + inst.dm),
+              changed, expected, actual);
+          return;
+        }
+      }
+    }
+    System.out.println("IncrementalApportionment is correct. Hopefully.");
+  }
+
+  /**
+   * Checks {@link DynamicApportionment} against recomputing from scratch with
+   * {@link PukelsheimPQ} after random sequences of all kinds of operations.
+   */
+  private static void testDynamic(final List<ApportionmentInstanceWithMethod> tests, final SedgewickRandom r) {
+    final PukelsheimPQ alg = new PukelsheimPQ();
+    for ( final ApportionmentInstanceWithMethod inst : tests ) {
+      // Build up the instance party by party
+      final DynamicApportionment dyn = new DynamicApportionment(inst.dm, inst.k);
+      for ( final double v : inst.votes ) {
+        dyn.addParty(v);
+      }
+
+      for ( int round = 0; round < 10; round++ ) {
+        final String op;
+        final int party = r.uniform(dyn.capacity());
+        switch ( r.uniform(4) ) {
+          case 0:
+            op = "updateWeight";
+            if ( dyn.contains(party) ) dyn.updateWeight(party, dyn.weight(party) * r.uniform(0.2, 5.0));
+            break;
+          case 1:
+            op = "removeParty";
+            if ( dyn.contains(party) && dyn.size() > 1 ) dyn.removeParty(party);
+            break;
+          case 2:
+            op = "addParty";
+            dyn.addParty(inst.votes[r.uniform(inst.votes.length)]);
+            break;
+          default:
+            op = "setHouseSize";
+            // Not too small, so that methods with d(0) = 0 remain well-defined
+            dyn.setHouseSize(r.uniform(5 * dyn.size(), 15 * dyn.size()));
+        }
+
+        // Compare on the parties currently present
+        final int[] ids = new int[dyn.size()];
+        final double[] votes = new double[dyn.size()];
+        for ( int i = 0, j = 0; i < dyn.capacity(); i++ ) {
+          if ( dyn.contains(i) ) {
+            ids[j] = i;
+            votes[j++] = dyn.weight(i);
+          }
+        }
+        final ApportionmentInstance current = new ApportionmentInstance(votes, dyn.houseSize());
+        final Apportionment expected = alg.apportion(current, inst.dm);
+        final int[] seats = new int[ids.length];
+        final int[] tiedSeats = new int[ids.length];
+        for ( int j = 0; j < ids.length; j++ ) {
+          seats[j] = dyn.seats(ids[j]);
+          tiedSeats[j] = dyn.tiedSeats(ids[j]);
+        }
+        final Apportionment actual = new Apportionment(current.k, seats, tiedSeats, dyn.astar());
+        if ( !assignmentSet(expected).equals(assignmentSet(actual)) ) {
+          printError(Arrays.asList("DynamicApportionment differs from PukelsheimPQ after " + op + " for " + inst.dm),
+              current, expected, actual);
+          return;
+        }
+      }
+    }
+    System.out.println("DynamicApportionment is correct. Hopefully.");
+  }
+
+  /**
+   * Checks {@link LiveApportionment} against {@link SandwichSelect} on the final
+   * tallies, after streaming in the votes of the first test instances in pieces.
+   */
+  private static void testLive(final List<ApportionmentInstanceWithMethod> tests, final SedgewickRandom r)
+      throws InterruptedException {
+    final DivisorMethod dm = new SainteLague();
+    final LiveApportionment.Subscriber ignore = new LiveApportionment.Subscriber() {
+      @Override
+      public void onUpdate(final LiveApportionment.Update update) {
+      }
+    };
+    for ( final ApportionmentInstance inst : tests.subList(0, Math.min(50, tests.size())) ) {
+      final int n = inst.votes.length;
+      try ( final LiveApportionment live = new LiveApportionment(new ApportionmentInstance(new double[n], inst.k), dm,
+          1, TimeUnit.MILLISECONDS, ignore) ) {
+        // Every party gets its votes in two parts plus a correction, in random order
+        final int[] order = new int[3 * n];
+        for ( int j = 0; j < order.length; j++ ) {
+          order[j] = j;
+        }
+        r.shuffle(order);
+        for ( final int j : order ) {
+          final int i = j % n;
+          final double v = inst.votes[i];
+          live.submit(i, j < n ? 0.5 * v : j < 2 * n ? 0.75 * v : -0.25 * v);
+        }
+        live.flush();
+
+        final Apportionment expected = new SandwichSelect().apportion(inst, dm);
+        final Apportionment actual = live.snapshot();
+        if ( actual == null || !assignmentSet(expected).equals(assignmentSet(actual)) ) {
+          printError(Arrays.asList("LiveApportionment differs from SandwichSelect"), inst, expected,
+              actual != null ? actual : "");
+          return;
+        }
+      }
+    }
+
+    // A failing subscriber is reported, but does not stop further updates
+    final AtomicInteger reported = new AtomicInteger();
+    final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(final Thread t, final Throwable e) {
+        reported.incrementAndGet();
+      }
+    });
+    try {
+      final ApportionmentInstance inst = tests.get(0);
+      final int n = inst.votes.length;
+      try ( final LiveApportionment live = new LiveApportionment(new ApportionmentInstance(new double[n], inst.k), dm,
+          1, TimeUnit.MILLISECONDS, new LiveApportionment.Subscriber() {
+        @Override
+        public void onUpdate(final LiveApportionment.Update update) {
+          throw new IllegalStateException("Failing subscriber");
+        }
+      }) ) {
+        // Start from rotated votes, so that the final correction changes the seats
+        for ( int i = 0; i < n; i++ ) {
+          live.submit(i, inst.votes[(i + 1) % n]);
+        }
+        live.flush();
+        for ( int i = 0; i < n; i++ ) {
+          live.submit(i, inst.votes[i] - inst.votes[(i + 1) % n]);
+        }
+        live.flush();
+
+        final Apportionment expected = new SandwichSelect().apportion(inst, dm);
+        final Apportionment actual = live.snapshot();
+        if ( reported.get() == 0 || actual == null
+            || !assignmentSet(expected).equals(assignmentSet(actual)) ) {
+          printError(Arrays.asList("LiveApportionment stops after a failing subscriber"), inst, expected,
+              actual != null ? actual : "", "Reported " + reported.get() + " exceptions");
+          return;
+        }
+      }
+    }
+    finally {
+      Thread.setDefaultUncaughtExceptionHandler(previous);
+    }
+    System.out.println("LiveApportionment is correct. Hopefully.");
+  }
+
+  /**
+   * Checks that every step of {@link HouseSizeSweep} yields one of the assignments
+   * that {@link PukelsheimPQ} finds for the respective house size.
+   */
+  private static void testSweep(final List<ApportionmentInstanceWithMethod> tests) {
+    final PukelsheimPQ alg = new PukelsheimPQ();
+    for ( final ApportionmentInstanceWithMethod inst : tests.subList(0, Math.min(100, tests.size())) ) {
+      final int n = inst.votes.length;
+      final HouseSizeSweep sweep = new HouseSizeSweep(inst, inst.dm);
+      final int[] parties = new int[n];
+      sweep.next(parties, 0, n);
+
+      // Replay the priority list on the start assignment
+      final int[] seats = new int[n];
+      for ( int i = 0; i < n; i++ ) {
+        seats[i] = sweep.seats(i);
+      }
+      for ( int j = n - 1; j >= 0; j-- ) {
+        seats[parties[j]]--;
+      }
+      for ( int j = 0; j < n; j++ ) {
+        seats[parties[j]]++;
+        final Apportionment expected = alg.apportion(new ApportionmentInstance(inst.votes, inst.k + j + 1), inst.dm);
+        final List<Integer> actual = new ArrayList<>(n);
+        for ( final int s : seats ) actual.add(s);
+        if ( !assignmentSet(expected).contains(actual) ) {
+          printError(Arrays.asList("HouseSizeSweep differs from PukelsheimPQ for k=" + (inst.k + j + 1)),
+              inst, expected, actual);
+          return;
+        }
+      }
+    }
+    System.out.println("HouseSizeSweep is correct. Hopefully.");
+  }
+
+  /**
+   * @return All assignments implied by <code>a</code>; unlike {@link Apportionment#equals},
+   *         this does not depend on which a* between the last assigned and first
+   *         unassigned seat value an algorithm reports.
+   */
+  private static Set<List<Integer>> assignmentSet(final Apportionment a) {
+    final Set<List<Integer>> result = new HashSet<>();
+    for ( final int[] asgnm : a.assignments() ) {
+      final List<Integer> l = new ArrayList<>(asgnm.length);
+      for ( final int s : asgnm ) l.add(s);
+      result.add(l);
+    }
+    return result;
+  }
+
+  /**
+   * Checks {@link PackedBatch} against {@link SandwichSelect} on all test instances,
+   * packed into one batch.
+   */
+  private static void testPackedBatch(final List<? extends ApportionmentInstance> tests, final DivisorMethod dm) {
+    final int[] offsets = new int[tests.size() + 1];
+    final int[] ks = new int[tests.size()];
+    for ( int i = 0; i < tests.size(); i++ ) {
+      offsets[i + 1] = offsets[i] + tests.get(i).votes.length;
+      ks[i] = tests.get(i).k;
+    }
+    final double[] votes = new double[offsets[tests.size()]];
+    for ( int i = 0; i < tests.size(); i++ ) {
+      System.arraycopy(tests.get(i).votes, 0, votes, offsets[i], tests.get(i).votes.length);
+    }
+    final int[] seats = new int[votes.length];
+    final int[] tiedSeats = new int[votes.length];
+    PackedBatch.apportion(votes, offsets, ks, dm, seats, tiedSeats);
+
+    final SandwichSelect alg = new SandwichSelect();
+    for ( int i = 0; i < tests.size(); i++ ) {
+      final Apportionment expected = alg.apportion(tests.get(i), dm);
+      if ( !Arrays.equals(expected.seats, Arrays.copyOfRange(seats, offsets[i], offsets[i + 1]))
+          || !Arrays.equals(expected.tiedSeats, Arrays.copyOfRange(tiedSeats, offsets[i], offsets[i + 1])) ) {
+        printError(Arrays.asList("PackedBatch differs from SandwichSelect for " + dm), tests.get(i), expected);
+        return;
+      }
+    }
+    System.out.println("PackedBatch is correct for " + dm + ". Hopefully.");
+  }
+
+  /**
+   * Checks that {@link ApportionmentBatch} returns the same results as sequential
+   * apportionment, in input order, when work is spread over several threads.
+   */
+  private static void testBatch(final List<ApportionmentInstanceWithMethod> tests) throws Exception {
+    final DivisorMethod dm = new SainteLague();
+    final ApportionmentAlgorithm alg = new SandwichSelect();
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      // Small chunks, so that there are many tasks
+      final List<Apportionment> results = new ApportionmentBatch(alg, executor, 2 * MIN_N).apportionAll(tests, dm);
+      for ( int i = 0; i < tests.size(); i++ ) {
+        if ( !alg.apportion(tests.get(i), dm).equals(results.get(i)) ) {
+          printError(Arrays.asList("batch result " + i + " differs from sequential result"), tests.get(i));
+          return;
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+    System.out.println("ApportionmentBatch is correct. Hopefully.");
+  }
+
+  /**
+   * Checks the selection algorithms in {@link RankSelection} against sorting,
+   * on inputs with and without many duplicates.
+   */
+  private static void testSelection(final SedgewickRandom r) {
+    final RankSelection.Selector[] selectors = new RankSelection.Selector[] {
+        RankSelection.QUICKSELECT, RankSelection.FLOYD_RIVEST, RankSelection.RADIX, RankSelection.THREE_WAY,
+        new RankSelection.Selector() {
+          @Override
+          public double select(double[] a, int hi, int k) {
+            return RankSelection.medianOfMediansSelect(a, hi, k);
+          }
+
+          @Override
+          public String toString() {
+            return "MedianOfMedians";
+          }
+        }
+    };
+
+    for ( final RankSelection.Selector selector : selectors ) {
+      boolean correct = true;
+      for ( int i = 0; i < REPS && correct; i++ ) {
+        // Also cover inputs large enough for sampling
+        final int n = r.uniform(1, i % 10 == 0 ? 10 * MAX_N * FACT_K : MAX_N);
+        final int distinct = r.uniform(1, n + 1);
+        final double[] a = new double[n];
+        for ( int j = 0; j < n; j++ ) {
+          // Some elements are only fuzzily equal
+          a[j] = 1.0 + r.uniform(distinct) + (r.uniform(4) == 0 ? EPSILON / 4 : 0);
+        }
+        final int k = r.uniform(n);
+        final int hi = r.uniform(k, n);
+
+        final double[] sorted = Arrays.copyOf(a, hi + 1);
+        Arrays.sort(sorted);
+        final int[] band = new int[3];
+        final double result = selector instanceof RankSelection.BandSelector
+            ? ((RankSelection.BandSelector)selector).select(a, hi, k, band)
+            : selector.select(a, hi, k);
+        if ( result != sorted[k] ) {
+          printError(Arrays.asList("selected " + result + " instead of " + sorted[k] +
+              " for rank " + k + " of " + (hi + 1)), selector);
+          correct = false;
+        }
+        else if ( !isPartitionedAround(a, hi, k, sorted) ) {
+          printError(Arrays.asList("did not rearrange the input around rank " + k + " of " + (hi + 1)), selector);
+          correct = false;
+        }
+        else if ( selector instanceof RankSelection.BandSelector ) {
+          int close = 0;
+          for ( final double x : sorted ) {
+            if ( fuzzyEquals(x, result) ) close++;
+          }
+          boolean bandCorrect = band[0] <= k && k <= band[1] && (band[2] == -1 || band[2] == close);
+          for ( int j = band[0]; j <= band[1] && bandCorrect; j++ ) {
+            bandCorrect = a[j] == result;
+          }
+          if ( !bandCorrect ) {
+            printError(Arrays.asList("wrong band " + Arrays.toString(band) + " around rank " + k +
+                " with " + close + " close elements"), selector);
+            correct = false;
+          }
+        }
+      }
+
+      if ( correct ) {
+        System.out.println(selector + " is correct. Hopefully.");
+      }
+    }
+
+    for ( int i = 0; i < REPS; i++ ) {
+      final int n = r.uniform(1, i % 10 == 0 ? 10 * MAX_N * FACT_K : MAX_N);
+      final int distinct = r.uniform(1, n + 1);
+      final double[] a = new double[n];
+      for ( int j = 0; j < n; j++ ) {
+        a[j] = 1.0 + r.uniform(distinct);
+      }
+      final int hi = r.uniform(n);
+      // Ascending ranks, some of them repeated
+      final int[] ranks = new int[r.uniform(1, 20)];
+      for ( int j = 0; j < ranks.length; j++ ) {
+        ranks[j] = r.uniform(hi + 1);
+      }
+      Arrays.sort(ranks);
+
+      final double[] sorted = Arrays.copyOf(a, hi + 1);
+      Arrays.sort(sorted);
+      final double[] out = new double[ranks.length];
+      RankSelection.multiSelect(a, hi, ranks, out);
+      for ( int j = 0; j < ranks.length; j++ ) {
+        if ( out[j] != sorted[ranks[j]] ) {
+          printError(Arrays.asList("multiSelect selected " + out[j] + " instead of " + sorted[ranks[j]] +
+              " for rank " + ranks[j] + " of " + (hi + 1)), Arrays.toString(ranks));
+          return;
+        }
+      }
+    }
+    System.out.println("MultiSelect is correct. Hopefully.");
+  }
+
+  /**
+   * @return <code>true</code> iff <code>a[0 .. hi]</code> is a permutation of <code>sorted</code>
+   *         with <code>a[k] = sorted[k]</code>, smaller or equal elements before and larger
+   *         or equal ones after.
+   */
+  private static boolean isPartitionedAround(final double[] a, final int hi, final int k, final double[] sorted) {
+    for ( int j = 0; j <= hi; j++ ) {
+      if ( j < k ? a[j] > a[k] : a[j] < a[k] ) return false;
+    }
+    final double[] permuted = Arrays.copyOf(a, hi + 1);
+    Arrays.sort(permuted);
+    return a[k] == sorted[k] && Arrays.equals(permuted, sorted);
+  }
+
+  /**
+   * Checks that {@link SandwichSelect#apportionInto} does not allocate once
+   * its workspace has been used on all instances, and that it computes the
+   * same results as {@link SandwichSelect#apportion}.
+   */
+  private static void testAllocationFreeness(final List<ApportionmentInstanceWithMethod> tests) {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if ( !(threads instanceof com.sun.management.ThreadMXBean)
+        || !((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported() ) {
+      System.out.println("Can not measure allocations on this JVM; skipping allocation test.");
+      return;
+    }
+    final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+    final long thread = Thread.currentThread().getId();
+
+    final SandwichSelect alg = new SandwichSelect();
+    final ApportionmentWorkspace workspace = new ApportionmentWorkspace();
+    final ArrayList<ApportionmentInstanceWithMethod> almostLinear = new ArrayList<>(tests.size());
+    for ( final ApportionmentInstanceWithMethod inst : tests ) {
+      if ( inst.dm instanceof AlmostLinearDivisorMethod ) {
+        almostLinear.add(inst);
+      }
+    }
+
+    // Warmup; also grows all buffers to their final size
+    for ( int rep = 0; rep < 20; rep++ ) {
+      for ( final ApportionmentInstanceWithMethod inst : almostLinear ) {
+        alg.apportionInto(inst, inst.dm, workspace);
+        if ( rep == 0 && !workspace.toApportionment().equals(alg.apportion(inst, inst.dm)) ) {
+          printError(Arrays.asList("apportionInto differs from apportion"), inst);
+          return;
+        }
+      }
+    }
+
+    // Measure twice without anything in between to account for the
+    // overhead of measuring itself. The JIT compiler may allocate on this thread
+    // now and then, e.g. when replacing a running loop, so only allocations in
+    // every one of several rounds count.
+    long allocated = Long.MAX_VALUE;
+    for ( int round = 0; round < ALLOCATION_ROUNDS && allocated > 0; round++ ) {
+      long before = allocations.getThreadAllocatedBytes(thread);
+      final long overhead = allocations.getThreadAllocatedBytes(thread) - before;
+      before = allocations.getThreadAllocatedBytes(thread);
+      for ( int i = 0; i < almostLinear.size(); i++ ) {
+        final ApportionmentInstanceWithMethod inst = almostLinear.get(i);
+        alg.apportionInto(inst, inst.dm, workspace);
+      }
+      allocated = Math.min(allocated, allocations.getThreadAllocatedBytes(thread) - before - overhead);
+    }
+
+    if ( allocated > 0 ) {
+      printError(Arrays.asList("apportionInto allocated " + allocated + " bytes in "
+          + almostLinear.size() + " calls"));
+    }
+    else {
+      System.out.println(SandwichSelect.class.getSimpleName() + ".apportionInto does not allocate. Hopefully.");
+    }
   }
 
   private static void printError(final Iterable<String> msgs, Object... details) {
@@ -283,6 +1251,25 @@ public class TestMain {
     }
   }
 
+  /**
+   * Forces all parallel code paths of {@link ParallelSandwichSelect}, even on small instances.
+   */
+  public static class EagerParallelSandwichSelect extends ParallelSandwichSelect {
+    public EagerParallelSandwichSelect() {
+      super(1);
+    }
+  }
+
+  /**
+   * Uses {@link RankSelection#THREE_WAY}, so that seats are derived without tie search
+   * whenever the selection shows that there are none.
+   */
+  public static class ThreeWaySandwichSelect extends SandwichSelect {
+    public ThreeWaySandwichSelect() {
+      super(RankSelection.THREE_WAY);
+    }
+  }
+
   private static class ApportionmentInstanceWithMethod extends ApportionmentInstance {
     final DivisorMethod dm;
 
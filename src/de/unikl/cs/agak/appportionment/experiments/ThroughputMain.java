@@ -0,0 +1,128 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.experiments;
+
+import de.unikl.cs.agak.appportionment.Apportionment;
+import de.unikl.cs.agak.appportionment.ApportionmentInstance;
+import de.unikl.cs.agak.appportionment.algorithms.ApportionmentAlgorithm;
+import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod;
+import de.unikl.cs.agak.appportionment.util.SedgewickRandom;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static de.unikl.cs.agak.appportionment.experiments.RunningTimeMain.writeSeparatedLine;
+
+/**
+ * Measures the throughput of a single algorithm instance that is shared by
+ * several threads, each apportioning its own stream of instances.
+ * Throughput should scale linearly with the number of threads, up to the number
+ * of available cores. All results are checked against a sequential run.
+ * <p/>
+ * Results are written to standard output as tab-separated values.
+ */
+public class ThroughputMain {
+  private static final int DISTINCT_INSTANCES = 64;
+
+  public static void main(String[] args) throws Exception {
+    if ( args.length < 2 ) {
+      System.out.println(
+          "Usage: ThroughputMain algo n1,n2,... [threads1,threads2,...] [c] [apportionments-per-thread] [seed] [method]");
+      System.exit(42);
+    }
+
+    final ApportionmentAlgorithm alg = RunningTimeMain.algoInstance(args[0]);
+    final String[] nsArray = args[1].split("\\s*,\\s*");
+    final List<Integer> threadCounts = new ArrayList<>();
+    if ( args.length >= 3 ) {
+      for ( final String t : args[2].split("\\s*,\\s*") ) {
+        threadCounts.add(Integer.parseInt(t));
+      }
+    }
+    else {
+      for ( int t = 1; t <= Runtime.getRuntime().availableProcessors(); t *= 2 ) {
+        threadCounts.add(t);
+      }
+    }
+    final int c = args.length >= 4 ? Integer.parseInt(args[3]) : 10;
+    final int perThread = args.length >= 5 ? Integer.parseInt(args[4]) : 100;
+    final long seed = args.length >= 6 ? Long.parseLong(args[5]) : System.currentTimeMillis();
+    final AlmostLinearDivisorMethod dm = args.length >= 7
+        ? RunningTimeMain.dmInstance(args[6])
+        : new LinearDivisorMethod(2, 1);
+    final ApportionmentInstanceFactory.KFactory k = new ApportionmentInstanceFactory.KFactory(c);
+
+    final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+    writeSeparatedLine(out, "algo", "dm", "n", "threads", "apportionments", "total-ms", "apportionments/s", "speedup");
+
+    final SedgewickRandom random = new SedgewickRandom(seed);
+    for ( final String nString : nsArray ) {
+      final int n = Integer.parseInt(nString);
+      final ApportionmentInstance[] instances = new ApportionmentInstance[DISTINCT_INSTANCES];
+      final Apportionment[] expected = new Apportionment[DISTINCT_INSTANCES];
+      for ( int i = 0; i < DISTINCT_INSTANCES; i++ ) {
+        instances[i] = ApportionmentInstanceFactory.randomInstance(random, ApportionmentInstanceFactory.UniformVotes, n, k);
+        // Also serves as warmup
+        expected[i] = alg.apportion(instances[i], dm);
+      }
+
+      double baseline = Double.NaN;
+      for ( final int threads : threadCounts ) {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Callable<Integer>> tasks = new ArrayList<>(threads);
+        for ( int t = 0; t < threads; t++ ) {
+          final int offset = t;
+          tasks.add(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+              for ( int r = 0; r < perThread; r++ ) {
+                final int i = (offset + r) % DISTINCT_INSTANCES;
+                if ( !alg.apportion(instances[i], dm).equals(expected[i]) ) {
+                  throw new IllegalStateException(alg.getClass().getSimpleName() + " is not thread-safe");
+                }
+              }
+              return perThread;
+            }
+          });
+        }
+
+        final long start = System.nanoTime();
+        int apportionments = 0;
+        for ( final Future<Integer> done : executor.invokeAll(tasks) ) {
+          apportionments += done.get();
+        }
+        final double millis = (System.nanoTime() - start) / 1000. / 1000;
+        executor.shutdown();
+
+        final double throughput = apportionments / millis * 1000;
+        if ( Double.isNaN(baseline) ) {
+          baseline = throughput / threads;
+        }
+        writeSeparatedLine(out, alg.getClass().getSimpleName(), dm.toString(), String.valueOf(n),
+            String.valueOf(threads), String.valueOf(apportionments), String.valueOf(millis),
+            String.valueOf(throughput), String.valueOf(throughput / baseline));
+      }
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.methods;
+
+/**
+ * Makes an arbitrary divisor method usable where an {@link AlmostLinearDivisorMethod}
+ * is needed, e.g. by {@link de.unikl.cs.agak.appportionment.algorithms.SandwichSelect}.
+ * <p/>
+ * {@link #derive(DivisorMethod, int)} scans <code>d(0), ..., d(maxIndex)</code>
+ * once, checks that the sequence is non-negative and strictly increasing, and
+ * chooses <code>alpha</code> as the slope of one of two secants, whichever
+ * gives the narrower band <code>[betaLower, betaUpper]</code>; the betas are the
+ * extremes of <code>d(j) - alpha j</code> plus a safety margin for rounding errors.
+ * Hence, the bounds are only guaranteed for <code>j <= maxIndex</code>, which
+ * suffices for house sizes up to <code>maxIndex</code>.
+ * <p/>
+ * If the wrapped method's {@link DivisorMethod#deltaInvRaw(double)} throws an
+ * {@link UnsupportedOperationException} or does not invert <code>d</code> on the
+ * scanned indices, it is replaced by the inverse of the piecewise linear
+ * interpolation of <code>d</code>; that one is found by binary search in the
+ * window the bounds leave, i.e. with <code>O(log((betaUpper - betaLower)/alpha))</code>
+ * evaluations of <code>d</code>. Any increasing continuation leads to the same roundings.
+ */
+public final class DerivedAlmostLinearMethod extends AlmostLinearDivisorMethod {
+  /**
+   * Relative tolerance for checking the given inverse.
+   */
+  private static final double INVERSE_TOLERANCE = 1E-9;
+  /**
+   * Relative safety margin for the bounds.
+   */
+  private static final double MARGIN = 1E-12;
+
+  private final DivisorMethod method;
+  private final int maxIndex;
+  private final double alpha;
+  private final double betaUpper;
+  private final double betaLower;
+  private final boolean numericInverse;
+
+  private DerivedAlmostLinearMethod(final DivisorMethod method, final int maxIndex, final double alpha,
+                                    final double betaUpper, final double betaLower, final boolean numericInverse) {
+    this.method = method;
+    this.maxIndex = maxIndex;
+    this.alpha = alpha;
+    this.betaUpper = betaUpper;
+    this.betaLower = betaLower;
+    this.numericInverse = numericInverse;
+  }
+
+  /**
+   * Derives almost linear bounds for the given method. Takes time
+   * <code>O(maxIndex)</code>, so reuse the result for many instances.
+   *
+   * @param maxIndex The bounds hold for <code>d(0), ..., d(maxIndex)</code>;
+   *                 at least the largest house size to be apportioned.
+   * @throws IllegalArgumentException if the scanned part of the sequence is
+   *                                  negative or not strictly increasing.
+   */
+  public static DerivedAlmostLinearMethod derive(final DivisorMethod method, final int maxIndex) {
+    if ( maxIndex < 1 || maxIndex == Integer.MAX_VALUE ) {
+      throw new IllegalArgumentException("Got maxIndex=" + maxIndex);
+    }
+    if ( method instanceof DerivedAlmostLinearMethod ) {
+      return derive(((DerivedAlmostLinearMethod)method).method, maxIndex);
+    }
+
+    final double d0 = method.d(0);
+    final double dMax = method.d(maxIndex);
+    if ( !(d0 >= 0) ) {
+      throw new IllegalArgumentException(method + " has d(0)=" + d0);
+    }
+    // Secants over the whole range, and over the upper half for the asymptotic slope
+    final double alphaAll = (dMax - d0) / maxIndex;
+    final int half = maxIndex / 2;
+    final double alphaHalf = (dMax - method.d(half)) / (maxIndex - half);
+
+    double maxAll = Double.NEGATIVE_INFINITY, minAll = Double.POSITIVE_INFINITY;
+    double maxHalf = Double.NEGATIVE_INFINITY, minHalf = Double.POSITIVE_INFINITY;
+    boolean inverts = true;
+    double previous = Double.NEGATIVE_INFINITY;
+    for ( int j = 0; j <= maxIndex; j++ ) {
+      final double d = method.d(j);
+      if ( !(d > previous) ) {
+        throw new IllegalArgumentException(method + " is not strictly increasing at j=" + j);
+      }
+      previous = d;
+
+      maxAll = Math.max(maxAll, d - alphaAll * j);
+      minAll = Math.min(minAll, d - alphaAll * j);
+      maxHalf = Math.max(maxHalf, d - alphaHalf * j);
+      minHalf = Math.min(minHalf, d - alphaHalf * j);
+
+      if ( inverts ) {
+        try {
+          inverts = Math.abs(method.deltaInvRaw(d) - j) <= INVERSE_TOLERANCE * Math.max(1, j);
+        } catch ( UnsupportedOperationException e ) {
+          inverts = false;
+        }
+      }
+    }
+
+    final boolean useAll = (maxAll - minAll) / alphaAll <= (maxHalf - minHalf) / alphaHalf;
+    final double alpha = useAll ? alphaAll : alphaHalf;
+    final double margin = MARGIN * Math.max(1, dMax);
+    return new DerivedAlmostLinearMethod(method, maxIndex, alpha,
+        (useAll ? maxAll : maxHalf) + margin, (useAll ? minAll : minHalf) - margin, !inverts);
+  }
+
+  /**
+   * Checks that the almost linear bounds of <code>method</code> may be used for
+   * house size <code>k</code>. That holds for all methods except derived ones,
+   * also when wrapped in a {@link DivisorTable}, whose bounds have only been
+   * verified up to {@link #getMaxIndex()}. Every algorithm that relies on the
+   * bounds calls this before using them.
+   *
+   * @throws IllegalArgumentException if the bounds have not been verified for <code>k</code>.
+   */
+  public static void checkHouseSize(final DivisorMethod method, final long k) {
+    if ( method instanceof DivisorTable ) {
+      checkHouseSize(((DivisorTable)method).getMethod(), k);
+    }
+    else if ( method instanceof DerivedAlmostLinearMethod && k > ((DerivedAlmostLinearMethod)method).maxIndex ) {
+      throw new IllegalArgumentException("Bounds of " + method + " only derived for k <= "
+          + ((DerivedAlmostLinearMethod)method).maxIndex);
+    }
+  }
+
+  /**
+   * @return The method the bounds were derived for.
+   */
+  public DivisorMethod getMethod() {
+    return method;
+  }
+
+  /**
+   * @return The largest index the bounds have been verified for.
+   */
+  public int getMaxIndex() {
+    return maxIndex;
+  }
+
+  /**
+   * @return <code>true</code> iff {@link #deltaInvRaw(double)} inverts <code>d</code>
+   *         numerically instead of using the wrapped method's inverse.
+   */
+  public boolean hasNumericInverse() {
+    return numericInverse;
+  }
+
+  @Override
+  public double d(final int j) {
+    return method.d(j);
+  }
+
+  @Override
+  public double d(final long j) {
+    return method.d(j);
+  }
+
+  @Override
+  public double deltaInvRaw(final double y) {
+    return numericInverse ? invert(y) : method.deltaInvRaw(y);
+  }
+
+  /**
+   * Inverts the piecewise linear interpolation of <code>d</code>; below <code>d(0)</code>,
+   * extends the first piece.
+   */
+  private double invert(final double y) {
+    final double d0 = method.d(0);
+    if ( y < d0 ) {
+      return (y - d0) / (method.d(1) - d0);
+    }
+
+    // The largest j with d(j) <= y is in [lo, hi) by the bounds, as long as they hold;
+    // widen the window otherwise.
+    int lo = (int)Math.max(0, Math.min(Integer.MAX_VALUE - 1, Math.floor((y - betaUpper) / alpha)));
+    while ( lo > 0 && method.d(lo) > y ) {
+      lo /= 2;
+    }
+    int hi = (int)Math.max(lo + 1, Math.min(Integer.MAX_VALUE - 1, Math.ceil((y - betaLower) / alpha) + 1));
+    while ( method.d(hi) <= y ) {
+      if ( hi == Integer.MAX_VALUE - 1 ) return hi; // Beyond any house size anyway
+      hi = (int)Math.min(Integer.MAX_VALUE - 1, 2L * hi);
+    }
+
+    // Invariant: d(lo) <= y < d(hi)
+    while ( hi - lo > 1 ) {
+      final int mid = (lo + hi) >>> 1;
+      if ( method.d(mid) <= y ) {
+        lo = mid;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    final double dLo = method.d(lo);
+    return lo + (y - dLo) / (method.d(lo + 1) - dLo);
+  }
+
+  @Override
+  public double getAlpha() {
+    return alpha;
+  }
+
+  @Override
+  public double getBetaUpper() {
+    return betaUpper;
+  }
+
+  @Override
+  public double getBetaLower() {
+    return betaLower;
+  }
+
+  @Override
+  public boolean isStationary() {
+    return method.isStationary();
+  }
+
+  @Override
+  public String toString() {
+    return method.toString();
+  }
+}
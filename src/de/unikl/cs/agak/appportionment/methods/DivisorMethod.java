@@ -15,6 +15,23 @@ public abstract class DivisorMethod {
    */
   public abstract double d(int j);
 
+  /**
+   * Like {@link #d(int)}, but for indices beyond the range of <code>int</code>.
+   * Subclasses with a closed form should override this; the default only
+   * works for indices that fit into an <code>int</code>.
+   *
+   * @param j Index in the divisor sequence, i.e. a non-negative number.
+   * @return The j-th value in the this divisor sequence.
+   * @throws IllegalArgumentException if j does not fit into an <code>int</code>
+   *                                  and this method is not overridden.
+   */
+  public double d(long j) {
+    if ( j > Integer.MAX_VALUE ) {
+      throw new IllegalArgumentException(this + " does not support j=" + j);
+    }
+    return d((int)j);
+  }
+
   /**
    * Computes the inverse function of the canonical continuation of
    * {@link DivisorMethod#d(int)}
@@ -46,6 +63,30 @@ public abstract class DivisorMethod {
     return FuzzyNumerics.fuzzyFloor(deltaInv(x));
   }
 
+  /**
+   * Like {@link #dRound(double)}, but for results beyond the range of <code>int</code>.
+   *
+   * @throws IllegalArgumentException if the result does not fit into a <code>long</code>.
+   * @see FuzzyNumerics#fuzzyFloorLong(double)
+   */
+  public final long dRoundLong(final double x) {
+    return FuzzyNumerics.fuzzyFloorLong(deltaInv(x));
+  }
+
+  /**
+   * Computes <code>seats[i] = dRound(votes[i] * astar) + 1</code> for all parties.
+   * Subclasses may override this with a loop the JIT compiler can unroll
+   * or vectorize, i.e. without virtual calls and branches.
+   *
+   * @see #dRound(double)
+   */
+  public void dRoundAll(final double[] votes, final double astar, final int[] seats) {
+    final int n = votes.length;
+    for ( int i = 0; i < n; i++ ) {
+      seats[i] = dRound(votes[i] * astar) + 1;
+    }
+  }
+
   public abstract boolean isStationary();
 
   @Override
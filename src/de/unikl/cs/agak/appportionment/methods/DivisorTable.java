@@ -0,0 +1,193 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.methods;
+
+import de.unikl.cs.agak.appportionment.methods.examples.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Wraps a divisor method and serves <code>d(j)</code> from a precomputed table
+ * for <code>j</code> below a fixed bound; beyond it, and for all other operations,
+ * it delegates to the wrapped method. Results are identical to those of the
+ * wrapped method, so any algorithm can use a table in its place. This pays off
+ * for methods whose sequence is expensive to evaluate, such as
+ * {@link de.unikl.cs.agak.appportionment.methods.examples.EqualProportions}.
+ * <p/>
+ * Tables are immutable once constructed and may thus be shared between threads;
+ * {@link #of(AlmostLinearDivisorMethod, int)} returns such shared instances
+ * for methods it can identify by their parameters.
+ */
+public final class DivisorTable extends AlmostLinearDivisorMethod {
+  /**
+   * The bound used by {@link #of(AlmostLinearDivisorMethod)}; the table takes 512 KiB.
+   */
+  public static final int DEFAULT_BOUND = 1 << 16;
+
+  /**
+   * The maximum number of shared tables; they take 512 KiB each with the default bound.
+   * Beyond that, the least recently requested table is no longer shared.
+   */
+  public static final int MAX_SHARED = 32;
+
+  /**
+   * Classes whose instances are determined by their class and parameters, so that
+   * their tables can be shared. Subclasses may override <code>d</code> or carry
+   * further state, so only these exact classes qualify.
+   */
+  private static final Set<Class<?>> PARAMETRIC = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+      LinearDivisorMethod.class, Danish.class, EqualProportions.class, GreatestDivisors.class,
+      HarmonicMean.class, Imperiali.class, ModifiedSainteLague.class, SainteLague.class,
+      SmallestDivisors.class));
+
+  /**
+   * Shared tables in order of access; guarded by itself.
+   */
+  private static final Map<List<Object>, DivisorTable> SHARED =
+      new LinkedHashMap<List<Object>, DivisorTable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<List<Object>, DivisorTable> eldest) {
+          return size() > MAX_SHARED;
+        }
+      };
+
+  private final AlmostLinearDivisorMethod method;
+  private final double[] table;
+
+  /**
+   * @param method The method to tabulate.
+   * @param bound  Values <code>d(0), ..., d(bound - 1)</code> are precomputed.
+   */
+  public DivisorTable(final AlmostLinearDivisorMethod method, final int bound) {
+    if ( bound < 0 ) {
+      throw new IllegalArgumentException("Got bound=" + bound);
+    }
+    this.method = method instanceof DivisorTable ? ((DivisorTable)method).method : method;
+    this.table = new double[bound];
+    for ( int j = 0; j < bound; j++ ) {
+      table[j] = this.method.d(j);
+    }
+  }
+
+  /**
+   * Like {@link #of(AlmostLinearDivisorMethod, int)} with {@link #DEFAULT_BOUND}.
+   */
+  public static DivisorTable of(final AlmostLinearDivisorMethod method) {
+    return of(method, DEFAULT_BOUND);
+  }
+
+  /**
+   * Returns a shared table for the given method, computing it on first use.
+   * Methods are considered the same if they have the same class and the same
+   * parameters <code>alpha</code>, <code>betaUpper</code> and <code>betaLower</code>.
+   * That only identifies {@link LinearDivisorMethod}s and the methods in
+   * {@link de.unikl.cs.agak.appportionment.methods.examples}; for all other
+   * methods, e.g. {@link DerivedAlmostLinearMethod}s, this returns a new table
+   * every time. At most {@link #MAX_SHARED} tables are shared at once.
+   *
+   * @param bound Values <code>d(0), ..., d(bound - 1)</code> are precomputed.
+   */
+  public static DivisorTable of(final AlmostLinearDivisorMethod method, final int bound) {
+    final AlmostLinearDivisorMethod m = method instanceof DivisorTable ? ((DivisorTable)method).method : method;
+    if ( !PARAMETRIC.contains(m.getClass()) ) {
+      return new DivisorTable(m, bound);
+    }
+    final List<Object> key = Arrays.<Object>asList(m.getClass(), m.getAlpha(), m.getBetaUpper(), m.getBetaLower(), bound);
+    synchronized ( SHARED ) {
+      final DivisorTable table = SHARED.get(key);
+      if ( table != null ) {
+        return table;
+      }
+    }
+    // Concurrent first uses may compute the table more than once, but all get the same
+    final DivisorTable computed = new DivisorTable(m, bound);
+    synchronized ( SHARED ) {
+      final DivisorTable previous = SHARED.get(key);
+      if ( previous != null ) {
+        return previous;
+      }
+      SHARED.put(key, computed);
+      return computed;
+    }
+  }
+
+  /**
+   * @return The wrapped method.
+   */
+  public AlmostLinearDivisorMethod getMethod() {
+    return method;
+  }
+
+  /**
+   * @return The number of precomputed values.
+   */
+  public int bound() {
+    return table.length;
+  }
+
+  @Override
+  public double d(final int j) {
+    return j >= 0 && j < table.length ? table[j] : method.d(j);
+  }
+
+  @Override
+  public double d(final long j) {
+    return j >= 0 && j < table.length ? table[(int)j] : method.d(j);
+  }
+
+  @Override
+  public double deltaInvRaw(final double y) {
+    return method.deltaInvRaw(y);
+  }
+
+  @Override
+  public void dRoundAll(final double[] votes, final double astar, final int[] seats) {
+    method.dRoundAll(votes, astar, seats);
+  }
+
+  @Override
+  public double getAlpha() {
+    return method.getAlpha();
+  }
+
+  @Override
+  public double getBetaUpper() {
+    return method.getBetaUpper();
+  }
+
+  @Override
+  public double getBetaLower() {
+    return method.getBetaLower();
+  }
+
+  @Override
+  public boolean isStationary() {
+    return method.isStationary();
+  }
+
+  @Override
+  public String toString() {
+    return method + "Table";
+  }
+}
@@ -0,0 +1,167 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.methods;
+
+import de.unikl.cs.agak.appportionment.methods.examples.EqualProportions;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Compares seat values <code>d(j)/v</code> exactly.
+ * <p/>
+ * Comparisons first compute both values in <code>double</code> arithmetic;
+ * if they differ by more than the rounding errors can account for
+ * (see {@link #RELATIVE_ERROR}), that order is final. Only otherwise are they
+ * compared exactly, by cross-multiplying for linear methods and by comparing
+ * squares for {@link EqualProportions}. Vote counts are taken as the rationals
+ * their <code>double</code>s represent, which is exact for integral vote counts
+ * up to 2^53, and indices must not exceed 2^50.
+ * {@link DivisorTable}s are compared as the methods they wrap.
+ */
+public abstract class ExactDivisorComparator {
+  /**
+   * Bounds the relative error of <code>d(j)/v</code> as computed by the supported methods;
+   * at most three roundings happen, so eight units in the last place are plenty.
+   */
+  public static final double RELATIVE_ERROR = 0x1p-50;
+
+  final DivisorMethod method;
+  private int exactComparisons = 0;
+
+  ExactDivisorComparator(final DivisorMethod method) {
+    this.method = method;
+  }
+
+  /**
+   * @return A comparator for the given method.
+   * @throws IllegalArgumentException if the method is neither linear nor {@link EqualProportions}.
+   */
+  public static ExactDivisorComparator forMethod(final DivisorMethod method) {
+    if ( method instanceof DivisorTable ) {
+      return forMethod(((DivisorTable)method).getMethod());
+    }
+    else if ( method instanceof LinearDivisorMethod ) {
+      return new Linear((LinearDivisorMethod)method);
+    }
+    else if ( method instanceof EqualProportions ) {
+      return new Geometric(method);
+    }
+    throw new IllegalArgumentException("No exact comparisons for " + method);
+  }
+
+  /**
+   * Like {@link #forMethod(DivisorMethod)}, but for other methods returns a comparator
+   * that takes the computed values of <code>d(j)</code> as exact; that is exact
+   * for methods whose divisors are exact as <code>double</code>s.
+   */
+  public static ExactDivisorComparator forMethodOrComputed(final DivisorMethod method) {
+    final DivisorMethod m = method instanceof DivisorTable ? ((DivisorTable)method).getMethod() : method;
+    if ( m instanceof LinearDivisorMethod || m instanceof EqualProportions ) {
+      return forMethod(m);
+    }
+    return new Computed(m);
+  }
+
+  /**
+   * @return A negative number, zero, or a positive number if <code>d(j)/v</code>
+   *         is less than, equal to, or greater than <code>d(l)/w</code>, respectively.
+   */
+  public final int compare(final long j, final double v, final long l, final double w) {
+    return compare(method.d(j) / v, j, v, method.d(l) / w, l, w);
+  }
+
+  /**
+   * Like {@link #compare(long, double, long, double)}, but with <code>x = d(j)/v</code> and
+   * <code>y = d(l)/w</code> already computed in <code>double</code> arithmetic.
+   */
+  public final int compare(final double x, final long j, final double v, final double y, final long l, final double w) {
+    // Both are off by a factor of at most 1 +- RELATIVE_ERROR
+    if ( x < y - 3 * RELATIVE_ERROR * y ) return -1;
+    if ( y < x - 3 * RELATIVE_ERROR * x ) return 1;
+
+    exactComparisons++;
+    return compareExact(j, new BigDecimal(v), l, new BigDecimal(w));
+  }
+
+  /**
+   * @return The number of comparisons the floating-point filter could not decide so far.
+   */
+  public int exactComparisons() {
+    return exactComparisons;
+  }
+
+  abstract int compareExact(long j, BigDecimal v, long l, BigDecimal w);
+
+  /**
+   * <code>(alpha j + beta) / v</code> vs <code>(alpha l + beta) / w</code>;
+   * scales alpha and beta to integers, which works since doubles are finite decimals.
+   */
+  private static final class Linear extends ExactDivisorComparator {
+    private final BigInteger alpha;
+    private final BigInteger beta;
+
+    Linear(final LinearDivisorMethod method) {
+      super(method);
+      final BigDecimal a = new BigDecimal(method.getAlpha());
+      final BigDecimal b = new BigDecimal(method.getBeta());
+      final int scale = Math.max(0, Math.max(a.scale(), b.scale()));
+      this.alpha = a.movePointRight(scale).toBigIntegerExact();
+      this.beta = b.movePointRight(scale).toBigIntegerExact();
+    }
+
+    @Override
+    int compareExact(final long j, final BigDecimal v, final long l, final BigDecimal w) {
+      final BigDecimal left = new BigDecimal(alpha.multiply(BigInteger.valueOf(j)).add(beta)).multiply(w);
+      final BigDecimal right = new BigDecimal(alpha.multiply(BigInteger.valueOf(l)).add(beta)).multiply(v);
+      return left.compareTo(right);
+    }
+  }
+
+  /**
+   * <code>sqrt(j(j+1)) / v</code> vs <code>sqrt(l(l+1)) / w</code>; both sides are
+   * non-negative, so compare <code>j(j+1) w^2</code> with <code>l(l+1) v^2</code>.
+   */
+  private static final class Geometric extends ExactDivisorComparator {
+    Geometric(final DivisorMethod method) {
+      super(method);
+    }
+
+    @Override
+    int compareExact(final long j, final BigDecimal v, final long l, final BigDecimal w) {
+      final BigInteger jj = BigInteger.valueOf(j).multiply(BigInteger.valueOf(j + 1));
+      final BigInteger ll = BigInteger.valueOf(l).multiply(BigInteger.valueOf(l + 1));
+      return new BigDecimal(jj).multiply(w).multiply(w).compareTo(new BigDecimal(ll).multiply(v).multiply(v));
+    }
+  }
+
+  /**
+   * <code>d(j) / v</code> vs <code>d(l) / w</code> with <code>d</code> as computed.
+   */
+  private static final class Computed extends ExactDivisorComparator {
+    Computed(final DivisorMethod method) {
+      super(method);
+    }
+
+    @Override
+    int compareExact(final long j, final BigDecimal v, final long l, final BigDecimal w) {
+      final BigDecimal left = new BigDecimal(method.d(j)).multiply(w);
+      final BigDecimal right = new BigDecimal(method.d(l)).multiply(v);
+      return left.compareTo(right);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package de.unikl.cs.agak.appportionment.methods;
 
+import de.unikl.cs.agak.appportionment.util.LinearScans;
+
 /**
  *  A divisor method whose divisor sequence is linear, i.e.
  * conforms to <code>a*j + b</code> for some constants
@@ -37,6 +39,15 @@ public class LinearDivisorMethod extends AlmostLinearDivisorMethod {
     return alpha * j + beta;
   }
 
+  @Override
+  public double d(long j) {
+    if ( j < 0 ) {
+      throw new IllegalArgumentException("Got j=" + j);
+    }
+
+    return alpha * j + beta;
+  }
+
   /**
      * Computes the inverse function of the canonical continuation of
      * {@link DivisorMethod#d(int)}
@@ -49,6 +60,11 @@ public class LinearDivisorMethod extends AlmostLinearDivisorMethod {
     return (y - beta) / alpha;
   }
 
+  @Override
+  public void dRoundAll(final double[] votes, final double astar, final int[] seats) {
+    LinearScans.dRoundAll(votes, alpha, beta, astar, seats);
+  }
+
   public boolean isStationary() {
     return 0 <= beta / alpha && beta / alpha <= 1;
   }
@@ -2,6 +2,8 @@ package de.unikl.cs.agak.appportionment.methods.examples;
 
 import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
 
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyFloorNonNegative;
+
 /**
  * @author Raphael Reitzig <reitzig@cs.uni-kl.de>, 2016
  */
@@ -23,7 +25,12 @@ public class EqualProportions extends AlmostLinearDivisorMethod {
 
   @Override
   public double d(int j) {
-    return Math.sqrt(j*(j+1));
+    return Math.sqrt(j*(j+1.0));
+  }
+
+  @Override
+  public double d(long j) {
+    return Math.sqrt(j*(j+1.0));
   }
 
   @Override
@@ -31,6 +38,19 @@ public class EqualProportions extends AlmostLinearDivisorMethod {
     return 0.5 * (-1 + Math.sqrt(1 + 4* y * y));
   }
 
+  /**
+   * Inlines {@link #deltaInvRaw(double)}, which is non-negative for non-negative
+   * arguments, so neither truncation nor checks are needed.
+   */
+  @Override
+  public void dRoundAll(final double[] votes, final double astar, final int[] seats) {
+    final int n = votes.length;
+    for ( int i = 0; i < n; i++ ) {
+      final double y = votes[i] * astar;
+      seats[i] = fuzzyFloorNonNegative(0.5 * (-1 + Math.sqrt(1 + 4 * y * y))) + 1;
+    }
+  }
+
   @Override
   public boolean isStationary() {
     return false;
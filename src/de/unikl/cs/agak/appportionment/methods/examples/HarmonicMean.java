@@ -2,6 +2,8 @@ package de.unikl.cs.agak.appportionment.methods.examples;
 
 import de.unikl.cs.agak.appportionment.methods.AlmostLinearDivisorMethod;
 
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyFloorNonNegative;
+
 /**
  * @author Raphael Reitzig <reitzig@cs.uni-kl.de>, 2016
  */
@@ -26,11 +28,29 @@ public class HarmonicMean extends AlmostLinearDivisorMethod {
     return (2.0*j*(j+1.0))/(2.0*j + 1.0);
   }
 
+  @Override
+  public double d(long j) {
+    return (2.0*j*(j+1.0))/(2.0*j + 1.0);
+  }
+
   @Override
   public double deltaInvRaw(double y) {
     return 0.5 * (-1 + y + Math.sqrt(1 + y * y));
   }
 
+  /**
+   * Inlines {@link #deltaInvRaw(double)}, which is non-negative for non-negative
+   * arguments, so neither truncation nor checks are needed.
+   */
+  @Override
+  public void dRoundAll(final double[] votes, final double astar, final int[] seats) {
+    final int n = votes.length;
+    for ( int i = 0; i < n; i++ ) {
+      final double y = votes[i] * astar;
+      seats[i] = fuzzyFloorNonNegative(0.5 * (-1 + y + Math.sqrt(1 + y * y))) + 1;
+    }
+  }
+
   @Override
   public boolean isStationary() {
     return false;
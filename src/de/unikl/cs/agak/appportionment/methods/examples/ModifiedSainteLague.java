@@ -41,6 +41,20 @@ public class ModifiedSainteLague extends AlmostLinearDivisorMethod {
     }
   }
 
+  @Override
+  public double d(long j) {
+    if ( j < 0 ) {
+      throw new IllegalArgumentException("Got j=" + j);
+    }
+
+    if ( j < 1 ) {
+      return 1.4;
+    }
+    else {
+      return 2.0*j + 1;
+    }
+  }
+
   @Override
   public double deltaInvRaw(double y) {
     if ( y >= 3.0 ) {
@@ -0,0 +1,249 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.util;
+
+import java.util.Arrays;
+
+/**
+ * An indexed d-ary heap over items <code>0, ..., n-1</code> with <code>double</code>
+ * keys, stored in primitive arrays. Keys of items in the heap can be changed in
+ * place, which is cheaper than removing and re-inserting them.
+ * <p/>
+ * The heap is either a min-heap or a max-heap; {@link #top()} is the item with
+ * smallest resp. largest key. Ties are broken arbitrarily.
+ */
+public class DaryHeap {
+  /**
+   * The arity used by {@link #DaryHeap(int, boolean)}.
+   */
+  public static final int DEFAULT_ARITY = 4;
+
+  private final int d;
+  private final double sign;  // internally, this is always a min-heap on sign * key
+  private int[] heap;   // heap position -> item
+  private int[] pos;    // item -> heap position, -1 if not in heap
+  private double[] key; // item -> sign * key
+  private int size = 0;
+
+  /**
+   * Creates an empty heap with {@link #DEFAULT_ARITY} for items <code>0, ..., n-1</code>.
+   *
+   * @param max <code>true</code> for a max-heap, <code>false</code> for a min-heap.
+   */
+  public DaryHeap(final int n, final boolean max) {
+    this(n, max, DEFAULT_ARITY);
+  }
+
+  /**
+   * Creates an empty heap with the given arity for items <code>0, ..., n-1</code>.
+   *
+   * @param max <code>true</code> for a max-heap, <code>false</code> for a min-heap.
+   */
+  public DaryHeap(final int n, final boolean max, final int arity) {
+    if ( arity < 2 ) throw new IllegalArgumentException("Arity must be at least 2, was " + arity);
+    this.d = arity;
+    this.sign = max ? -1 : 1;
+    this.heap = new int[n];
+    this.pos = new int[n];
+    this.key = new double[n];
+    Arrays.fill(pos, -1);
+  }
+
+  /**
+   * Makes room for items <code>0, ..., n-1</code>; items already in the heap
+   * are kept.
+   */
+  public void ensureCapacity(final int n) {
+    if ( n > pos.length ) {
+      final int old = pos.length;
+      heap = Arrays.copyOf(heap, n);
+      pos = Arrays.copyOf(pos, n);
+      key = Arrays.copyOf(key, n);
+      Arrays.fill(pos, old, n, -1);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(final int item) {
+    return pos[item] >= 0;
+  }
+
+  /**
+   * Inserts an item without restoring the heap property;
+   * call {@link #heapify()} after all items have been inserted this way.
+   */
+  public void addUnordered(final int item, final double key) {
+    assert !contains(item);
+    this.key[item] = sign * key;
+    heap[size] = item;
+    pos[item] = size;
+    size++;
+  }
+
+  /**
+   * Restores the heap property in linear time.
+   */
+  public void heapify() {
+    for ( int p = (size - 2) / d; p >= 0; p-- ) {
+      siftDown(p);
+    }
+  }
+
+  public void add(final int item, final double key) {
+    addUnordered(item, key);
+    siftUp(size - 1);
+  }
+
+  /**
+   * @return The item with smallest (min-heap) resp. largest (max-heap) key.
+   */
+  public int top() {
+    if ( size == 0 ) throw new IllegalStateException("Heap is empty");
+    return heap[0];
+  }
+
+  public double topKey() {
+    return sign * key[top()];
+  }
+
+  public double key(final int item) {
+    assert contains(item);
+    return sign * key[item];
+  }
+
+  /**
+   * Changes the key of the top item and moves it to its new position.
+   */
+  public void updateTop(final double key) {
+    this.key[top()] = sign * key;
+    siftDown(0);
+  }
+
+  /**
+   * Changes the key of an item in the heap and moves it to its new position.
+   */
+  public void update(final int item, final double key) {
+    assert contains(item);
+    final double old = this.key[item];
+    this.key[item] = sign * key;
+    if ( sign * key < old ) siftUp(pos[item]);
+    else siftDown(pos[item]);
+  }
+
+  /**
+   * Stores all items with key smaller than (min-heap) resp. larger than (max-heap)
+   * <code>bound</code> to the front of <code>out</code>, in no particular order.
+   * Only the part of the heap above these items is visited, so this takes time
+   * proportional to the number of items found (times the arity).
+   *
+   * @param out Buffer large enough to hold all items found.
+   * @return The number of items found.
+   */
+  public int itemsBefore(final double bound, final int[] out) {
+    final double k = sign * bound;
+    if ( size == 0 || key[heap[0]] >= k ) return 0;
+
+    // Breadth-first search on heap positions, using out as queue
+    out[0] = 0;
+    int found = 1;
+    for ( int q = 0; q < found; q++ ) {
+      final int first = d * out[q] + 1;
+      final int last = Math.min(first + d, size);
+      for ( int c = first; c < last; c++ ) {
+        if ( key[heap[c]] < k ) out[found++] = c;
+      }
+    }
+    for ( int q = 0; q < found; q++ ) {
+      out[q] = heap[out[q]];
+    }
+    return found;
+  }
+
+  /**
+   * Removes and returns the top item.
+   */
+  public int removeTop() {
+    final int top = top();
+    remove(top);
+    return top;
+  }
+
+  public void remove(final int item) {
+    assert contains(item);
+    final int p = pos[item];
+    size--;
+    pos[item] = -1;
+    if ( p < size ) {
+      final int last = heap[size];
+      heap[p] = last;
+      pos[last] = p;
+      if ( p > 0 && key[last] < key[heap[(p - 1) / d]] ) siftUp(p);
+      else siftDown(p);
+    }
+  }
+
+  private void siftUp(int p) {
+    final int item = heap[p];
+    final double k = key[item];
+    while ( p > 0 ) {
+      final int parent = (p - 1) / d;
+      final int pItem = heap[parent];
+      if ( key[pItem] <= k ) break;
+      heap[p] = pItem;
+      pos[pItem] = p;
+      p = parent;
+    }
+    heap[p] = item;
+    pos[item] = p;
+  }
+
+  private void siftDown(int p) {
+    final int item = heap[p];
+    final double k = key[item];
+    while ( true ) {
+      final int first = d * p + 1;
+      if ( first >= size ) break;
+
+      // Find child with smallest key
+      final int last = Math.min(first + d, size);
+      int min = first;
+      double minKey = key[heap[first]];
+      for ( int c = first + 1; c < last; c++ ) {
+        final double cKey = key[heap[c]];
+        if ( cKey < minKey ) {
+          min = c;
+          minKey = cKey;
+        }
+      }
+
+      if ( minKey >= k ) break;
+      final int cItem = heap[min];
+      heap[p] = cItem;
+      pos[cItem] = p;
+      p = min;
+    }
+    heap[p] = item;
+    pos[item] = p;
+  }
+}
@@ -21,6 +21,8 @@ package de.unikl.cs.agak.appportionment.util;
 public class FuzzyNumerics {
   public static final double EPSILON = 1E-14;      // TODO these *should* be private
   private static final long MANTISSA_EPSILON = 16L;
+  /** 2^63, the smallest double that does not fit into a long */
+  private static final double LONG_RANGE = 0x1p63;
 
   /**
    * @return true iff x is within {@link #EPSILON} of an integer
@@ -41,6 +43,14 @@ public class FuzzyNumerics {
     return (int)Math.floor(xTimesOnePlusEps);
   }
 
+  /**
+   * Like {@link #fuzzyFloor(double)}, but only for <code>x >= 0</code>, which is not checked.
+   * Contains no branches, so loops over it remain simple enough to be vectorized.
+   */
+  public static int fuzzyFloorNonNegative(double x) {
+    return (int)Math.floor(Double.longBitsToDouble(Double.doubleToRawLongBits(x) + MANTISSA_EPSILON));
+  }
+
   /**
    * @param x
    * @return <tt>ceil(x*(1-epsilon))</tt>, for a small epsilon intended to cover
@@ -52,6 +62,43 @@ public class FuzzyNumerics {
     return (int)Math.ceil(xTimesOneMinusEps);
   }
 
+  /**
+   * Like {@link #fuzzyFloor(double)}, but for results beyond the range of <code>int</code>.
+   *
+   * @throws IllegalArgumentException if x < -1 or the result does not fit into a <code>long</code>.
+   */
+  public static long fuzzyFloorLong(double x) {
+    if ( x < -1 ) throw new IllegalArgumentException("fuzzyFloorLong only works for x >= -1");
+    if ( x < 0 ) return x < -EPSILON ? -1 : 0;
+    final double xTimesOnePlusEps = Double.longBitsToDouble(Double.doubleToRawLongBits(x) + MANTISSA_EPSILON);
+    // A plain cast would silently saturate
+    if ( !(xTimesOnePlusEps < LONG_RANGE) ) throw new IllegalArgumentException(x + " exceeds the range of long");
+    return (long)Math.floor(xTimesOnePlusEps);
+  }
+
+  /**
+   * Like {@link #fuzzyCeil(double)}, but for results beyond the range of <code>int</code>.
+   *
+   * @throws IllegalArgumentException if x < 0 or the result does not fit into a <code>long</code>.
+   */
+  public static long fuzzyCeilLong(double x) {
+    if ( x < 0 ) throw new IllegalArgumentException("fuzzyCeilLong only works for x >= 0");
+    final double xTimesOneMinusEps = Double.longBitsToDouble(Double.doubleToRawLongBits(x) - MANTISSA_EPSILON);
+    if ( !(xTimesOneMinusEps < LONG_RANGE) ) throw new IllegalArgumentException(x + " exceeds the range of long");
+    return (long)Math.ceil(xTimesOneMinusEps);
+  }
+
+  /**
+   * Like {@link #fuzzyEquals(double, double)}, but the tolerance grows with the
+   * magnitude of the operands once they exceed 1. Use this for values that may
+   * be so large that {@link #EPSILON} is below their precision.
+   *
+   * @return <code>true</code> iff |x - y| < {@link #EPSILON} * max(1, |x|, |y|)
+   */
+  public static boolean fuzzyEqualsScaled(double x, double y) {
+    return Math.abs(x - y) < EPSILON * Math.max(1, Math.max(Math.abs(x), Math.abs(y)));
+  }
+
   /**
    * @return int i if x is within {@link #EPSILON} of an integer i, null otherwise
    */
@@ -0,0 +1,132 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.util;
+
+import static de.unikl.cs.agak.appportionment.util.FuzzyNumerics.fuzzyFloor;
+
+/**
+ * Linear scans over <code>double[]</code> used by the O(n) passes of the
+ * apportionment algorithms.
+ * <p/>
+ * The loops are written so that the JIT can unroll and vectorize them: reductions
+ * use several independent accumulators, filters do not branch per element, and
+ * scans keep their running minimum in a local. Methods taking <code>alpha</code> and <code>beta</code> are
+ * specializations for {@link de.unikl.cs.agak.appportionment.methods.LinearDivisorMethod}
+ * with <code>d(j) = alpha * j + beta</code>; they avoid the virtual calls of the
+ * generic {@link de.unikl.cs.agak.appportionment.methods.DivisorMethod} interface.
+ * All results are exactly those of the straight-forward scalar loops.
+ */
+public final class LinearScans {
+  private LinearScans() {
+  }
+
+  /**
+   * @return The maximum of <code>a[0..n-1]</code>, negative infinity if <code>n = 0</code>.
+   */
+  public static double max(final double[] a, final int n) {
+    double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+    int i = 0;
+    for ( ; i + 3 < n; i += 4 ) {
+      m0 = a[i] > m0 ? a[i] : m0;
+      m1 = a[i + 1] > m1 ? a[i + 1] : m1;
+      m2 = a[i + 2] > m2 ? a[i + 2] : m2;
+      m3 = a[i + 3] > m3 ? a[i + 3] : m3;
+    }
+    for ( ; i < n; i++ ) {
+      m0 = a[i] > m0 ? a[i] : m0;
+    }
+    m0 = m1 > m0 ? m1 : m0;
+    m2 = m3 > m2 ? m3 : m2;
+    return m2 > m0 ? m2 : m0;
+  }
+
+  /**
+   * @return The smallest index <code>i < n</code> with <code>a[i]</code> minimal,
+   *         <code>0</code> if <code>n = 0</code>.
+   */
+  public static int argMin(final double[] a, final int n) {
+    // Keep the current minimum in a register instead of re-reading a[im]
+    int im = 0;
+    double m = n > 0 ? a[0] : Double.NaN;
+    for ( int i = 1; i < n; i++ ) {
+      if ( a[i] < m ) {
+        m = a[i];
+        im = i;
+      }
+    }
+    return im;
+  }
+
+  /**
+   * @return The smallest index <code>i < n</code> with <code>a[i]</code> maximal,
+   *         <code>0</code> if <code>n = 0</code>.
+   */
+  public static int argMax(final double[] a, final int n) {
+    int im = 0;
+    double m = n > 0 ? a[0] : Double.NaN;
+    for ( int i = 1; i < n; i++ ) {
+      if ( a[i] > m ) {
+        m = a[i];
+        im = i;
+      }
+    }
+    return im;
+  }
+
+  /**
+   * Stores the indices <code>i < n</code> with <code>a[i] > threshold</code>
+   * in ascending order to the front of <code>indices</code>.
+   *
+   * @param indices Buffer with at least <code>n</code> entries.
+   * @return The number of indices stored.
+   */
+  public static int indicesAbove(final double[] a, final int n, final double threshold, final int[] indices) {
+    int size = 0;
+    for ( int i = 0; i < n; i++ ) {
+      // Write unconditionally, only advance on hits
+      indices[size] = i;
+      size += a[i] > threshold ? 1 : 0;
+    }
+    return size;
+  }
+
+  /**
+   * @return The sum of <code>a[indices[0]], ..., a[indices[size-1]]</code>,
+   *         added up in this order.
+   */
+  public static double sum(final double[] a, final int[] indices, final int size) {
+    double sum = 0;
+    for ( int ii = 0; ii < size; ii++ ) {
+      sum += a[indices[ii]];
+    }
+    return sum;
+  }
+
+  /**
+   * Computes <code>seats[i] = dRound(votes[i] * astar) + 1</code> for all parties,
+   * where <code>dRound</code> is the rounding induced by <code>d(j) = alpha * j + beta</code>.
+   *
+   * @see de.unikl.cs.agak.appportionment.methods.DivisorMethod#dRound(double)
+   */
+  public static void dRoundAll(final double[] votes, final double alpha, final double beta,
+                               final double astar, final int[] seats) {
+    final int n = votes.length;
+    for ( int i = 0; i < n; i++ ) {
+      seats[i] = fuzzyFloor(Math.max(-1, (votes[i] * astar - beta) / alpha)) + 1;
+    }
+  }
+}
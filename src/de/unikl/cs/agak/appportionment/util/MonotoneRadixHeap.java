@@ -0,0 +1,130 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.util;
+
+import java.util.Arrays;
+
+/**
+ * A monotone radix heap over items with non-negative <code>double</code> keys.
+ * <p/>
+ * Monotone means that keys inserted are never smaller than the last key
+ * extracted; this holds for instance if every item is re-inserted with a larger key
+ * after being extracted. Non-negative doubles compare like their IEEE-754 bit
+ * patterns, so items are distributed into buckets by the highest bit in which
+ * their key differs from the last extracted key. Insertion takes constant
+ * time and extraction constant amortized time (for 64-bit keys).
+ */
+public class MonotoneRadixHeap {
+  private static final int BUCKETS = 65;
+
+  private final int[][] items = new int[BUCKETS][];
+  private final long[][] keys = new long[BUCKETS][];
+  private final int[] sizes = new int[BUCKETS];
+  private long last = 0L;
+  private int size = 0;
+
+  /**
+   * @param capacity The expected maximum number of items in the heap;
+   *                 buckets grow beyond that if necessary.
+   */
+  public MonotoneRadixHeap(final int capacity) {
+    final int initial = Math.max(4, capacity);
+    items[0] = new int[initial];
+    keys[0] = new long[initial];
+    for ( int b = 1; b < BUCKETS; b++ ) {
+      items[b] = new int[4];
+      keys[b] = new long[4];
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return The key extracted last; <code>0</code> before the first extraction.
+   */
+  public double lastKey() {
+    return Double.longBitsToDouble(last);
+  }
+
+  /**
+   * @param item Any integer; need not be unique.
+   * @param key  A non-negative key, no smaller than {@link #lastKey()}.
+   * @throws IllegalArgumentException if key is negative or smaller than the last extracted key.
+   */
+  public void add(final int item, final double key) {
+    final long bits = Double.doubleToRawLongBits(key + 0.0); // normalizes -0.0
+    if ( !(key >= 0) || bits < last ) {
+      throw new IllegalArgumentException("Key " + key + " violates monotonicity; last key was " + lastKey());
+    }
+    push(bucket(bits), item, bits);
+    size++;
+  }
+
+  /**
+   * Removes an item with smallest key; that key is then available
+   * as {@link #lastKey()}.
+   *
+   * @return The removed item.
+   */
+  public int removeMin() {
+    if ( size == 0 ) throw new IllegalStateException("Heap is empty");
+
+    if ( sizes[0] == 0 ) {
+      // Find first non-empty bucket and its minimum
+      int b = 1;
+      while ( sizes[b] == 0 ) b++;
+      final long[] bKeys = keys[b];
+      final int[] bItems = items[b];
+      final int bSize = sizes[b];
+      long min = bKeys[0];
+      for ( int j = 1; j < bSize; j++ ) {
+        if ( bKeys[j] < min ) min = bKeys[j];
+      }
+
+      // Redistribute relative to the new minimum; all end up in lower buckets
+      last = min;
+      sizes[b] = 0;
+      for ( int j = 0; j < bSize; j++ ) {
+        push(bucket(bKeys[j]), bItems[j], bKeys[j]);
+      }
+    }
+
+    size--;
+    return items[0][--sizes[0]];
+  }
+
+  private int bucket(final long bits) {
+    return 64 - Long.numberOfLeadingZeros(bits ^ last);
+  }
+
+  private void push(final int b, final int item, final long bits) {
+    final int s = sizes[b];
+    if ( s == items[b].length ) {
+      items[b] = Arrays.copyOf(items[b], 2 * s);
+      keys[b] = Arrays.copyOf(keys[b], 2 * s);
+    }
+    items[b][s] = item;
+    keys[b][s] = bits;
+    sizes[b] = s + 1;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package de.unikl.cs.agak.appportionment.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Helpers for splitting a range <code>[0, n)</code> into contiguous blocks
+ * and processing all blocks in parallel on a {@link ForkJoinPool}.
+ */
+public class ParallelBlocks {
+  /**
+   * Work to be done for a single block.
+   */
+  public interface Phase {
+    void run(int block);
+  }
+
+  /**
+   * @param pool   The pool the blocks are going to be processed on.
+   * @param n      The size of the range to split.
+   * @param cutoff The minimum number of elements per block.
+   * @return The number of blocks to use for a range of size <code>n</code>;
+   * <code>1</code> iff <code>n < 2 * cutoff</code>.
+   */
+  public static int count(final ForkJoinPool pool, final int n, final int cutoff) {
+    if ( n < 2 * cutoff ) return 1;
+    return Math.max(1, Math.min(n / cutoff, 4 * pool.getParallelism()));
+  }
+
+  /**
+   * @return The first index of the given block; <code>start(blocks, n, blocks) = n</code>.
+   */
+  public static int start(final int block, final int n, final int blocks) {
+    return (int)((long)block * n / blocks);
+  }
+
+  /**
+   * Executes <code>phase</code> for all blocks <code>0, ..., blocks-1</code> and
+   * returns once all are done. A single block is processed in the calling thread.
+   */
+  public static void forEach(final ForkJoinPool pool, final int blocks, final Phase phase) {
+    if ( blocks == 1 ) {
+      phase.run(0);
+    }
+    else {
+      pool.invoke(new BlockTask(phase, 0, blocks));
+    }
+  }
+
+  private static final class BlockTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Phase phase;
+    private final int from;
+    private final int to;
+
+    BlockTask(final Phase phase, final int from, final int to) {
+      this.phase = phase;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if ( to - from == 1 ) {
+        phase.run(from);
+      }
+      else {
+        final int mid = (from + to) >>> 1;
+        invokeAll(new BlockTask(phase, from, mid), new BlockTask(phase, mid, to));
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Rank selection on primitive <code>double[]</code> that distributes the work
+ * over the threads of a {@link ForkJoinPool}.
+ * <p/>
+ * Each round draws a random sample, picks two pivots from it that enclose the
+ * sought rank with high probability (as in Floyd and Rivest's algorithm),
+ * counts the elements below, between and above them blockwise in parallel, and
+ * compacts the part that contains the sought rank into a scratch array.
+ * Once at most <code>cutoff</code> elements remain,
+ * {@link RankSelection#select(double[], int, int)} takes over.
+ * <p/>
+ * Samples are drawn with a generator seeded from the arguments of the call,
+ * as in {@link RankSelection}, so runs are reproducible.
+ */
+public class ParallelRankSelection {
+  private static final int SAMPLE_SIZE = 1024;
+  private static final int SAMPLE_GAP = 64;
+
+  /**
+   * Like {@link RankSelection#select(double[], int, int)}, but partitions
+   * in parallel while more than <code>cutoff</code> elements remain.
+   * The order of elements in <code>a</code> is destroyed.
+   *
+   * @param pool   Pool to execute partitioning rounds on.
+   * @param a      Array to select from.
+   * @param hi     Last index of <code>a</code> to consider.
+   * @param k      Zero-based rank to select.
+   * @param cutoff Minimum number of elements per parallel task.
+   * @return The element with rank <code>k</code> in <code>a[0..hi]</code>.
+   */
+  public static double select(final ForkJoinPool pool, final double[] a, int hi, int k, final int cutoff) {
+    if ( hi >= a.length ) throw new IndexOutOfBoundsException("hi > a.length");
+    if ( k < 0 || k > hi ) {
+      throw new IndexOutOfBoundsException("Selected element out of bounds");
+    }
+
+    long random = RankSelection.seed(a, hi, k);
+    double[] src = a;
+    double[] dst = null;
+    int size = hi + 1;
+    while ( size > cutoff ) {
+      // Pick two pivots around the relative position of rank k in a sample
+      final double[] sample = new double[SAMPLE_SIZE];
+      for ( int i = 0; i < SAMPLE_SIZE; i++ ) {
+        random += RankSelection.GOLDEN_GAMMA;
+        sample[i] = src[RankSelection.uniform(RankSelection.mix(random), size)];
+      }
+      Arrays.sort(sample);
+      final int pos = (int)((long)k * SAMPLE_SIZE / size);
+      final double p = sample[Math.max(0, pos - SAMPLE_GAP)];
+      final double q = sample[Math.min(SAMPLE_SIZE - 1, pos + SAMPLE_GAP)];
+
+      // Classify blockwise: [0] < p <= [1] <= q < [2]
+      final int blocks = ParallelBlocks.count(pool, size, cutoff);
+      final int[][] counts = new int[blocks][3];
+      final double[] in = src;
+      final int n = size;
+      ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+        @Override
+        public void run(final int b) {
+          int below = 0;
+          int above = 0;
+          final int from = ParallelBlocks.start(b, n, blocks);
+          final int to = ParallelBlocks.start(b + 1, n, blocks);
+          for ( int i = from; i < to; i++ ) {
+            final double x = in[i];
+            if ( x < p ) below++;
+            else if ( x > q ) above++;
+          }
+          counts[b][0] = below;
+          counts[b][1] = to - from - below - above;
+          counts[b][2] = above;
+        }
+      });
+
+      final int[] totals = new int[3];
+      for ( final int[] c : counts ) {
+        totals[0] += c[0];
+        totals[1] += c[1];
+        totals[2] += c[2];
+      }
+
+      final int part;
+      if ( k < totals[0] ) {
+        part = 0;
+      }
+      else if ( k < totals[0] + totals[1] ) {
+        if ( p == q ) return p; // all of the middle part equals p
+        part = 1;
+        k -= totals[0];
+      }
+      else {
+        part = 2;
+        k -= totals[0] + totals[1];
+      }
+
+      if ( totals[part] == size ) {
+        // Unlucky sample; we did not make progress.
+        break;
+      }
+
+      // Compact the chosen part into the scratch array
+      final int[] offsets = new int[blocks];
+      for ( int b = 1; b < blocks; b++ ) {
+        offsets[b] = offsets[b - 1] + counts[b - 1][part];
+      }
+      if ( dst == null ) {
+        dst = new double[totals[part]];
+      }
+      final double[] out = dst;
+      ParallelBlocks.forEach(pool, blocks, new ParallelBlocks.Phase() {
+        @Override
+        public void run(final int b) {
+          int j = offsets[b];
+          final int to = ParallelBlocks.start(b + 1, n, blocks);
+          for ( int i = ParallelBlocks.start(b, n, blocks); i < to; i++ ) {
+            final double x = in[i];
+            final int xPart = x < p ? 0 : (x > q ? 2 : 1);
+            if ( xPart == part ) {
+              out[j++] = x;
+            }
+          }
+        }
+      });
+
+      size = totals[part];
+      dst = src;
+      src = out;
+    }
+
+    return RankSelection.select(src, size - 1, k);
+  }
+}
@@ -0,0 +1,218 @@
+/*
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package de.unikl.cs.agak.appportionment.util;
+
+import java.util.Arrays;
+
+/**
+ * Rank selection on primitive <code>double[]</code> without comparisons:
+ * an MSD radix select over the IEEE-754 bit patterns of the values.
+ * <p/>
+ * After mapping negative values, the bit patterns of doubles order the same
+ * way as the values themselves (as in {@link Double#compare(double, double)}).
+ * Each pass builds a histogram of the highest byte in which the remaining keys
+ * differ, determines the bucket that contains the sought rank and partitions
+ * the remaining elements by swapping, like three-way quicksort does: smaller
+ * buckets to the left, larger ones to the right. Hence, the array ends up
+ * rearranged as by {@link RankSelection#select(double[], int, int)}.
+ * Once few elements remain, Floyd-Rivest selection takes over.
+ * <p/>
+ * For <code>float[]</code>, keys have only 32 bits, so at most four passes are
+ * needed and no comparison-based selection is involved at all.
+ */
+public class RadixSelection {
+  private static final int DIGIT_BITS = 8;
+  private static final int BUCKETS = 1 << DIGIT_BITS;
+  private static final int MASK = BUCKETS - 1;
+
+  /**
+   * Inputs of at most this size are handed to comparison-based selection.
+   */
+  private static final int CUTOFF = 1 << 10;
+
+  /**
+   * Histogram buffers, so that selection does not allocate.
+   */
+  private static final ThreadLocal<int[]> COUNTS = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[BUCKETS];
+    }
+  };
+
+  /**
+   * @return A key whose signed order is the order of the given (non-NaN) double.
+   */
+  public static long key(final double x) {
+    final long bits = Double.doubleToRawLongBits(x);
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+
+  /**
+   * @return A key whose signed order is the order of the given (non-NaN) float.
+   */
+  public static int key(final float x) {
+    final int bits = Float.floatToRawIntBits(x);
+    return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+  }
+
+  /**
+   * Like {@link RankSelection#select(double[], int, int)}, but by radix selection.
+   * Values must not be NaN.
+   */
+  public static double select(final double[] a, final int hi, int k) {
+    if ( hi >= a.length ) throw new IndexOutOfBoundsException("hi > a.length");
+    if ( k < 0 || k > hi ) {
+      throw new IndexOutOfBoundsException("Selected element out of bounds");
+    }
+
+    final int[] counts = COUNTS.get();
+    // Invariant: a[0 .. lo-1] <= a[lo .. lo+size-1] <= a[lo+size .. hi], and lo <= k < lo+size
+    int lo = 0;
+    int size = hi + 1;
+
+    // Bits in which all keys agree need no pass of their own.
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for ( int i = 0; i < size; i++ ) {
+      final long key = key(a[i]);
+      if ( key < min ) min = key;
+      if ( key > max ) max = key;
+    }
+
+    while ( size > CUTOFF ) {
+      if ( min == max ) {
+        // All remaining keys are equal
+        return a[k];
+      }
+      final int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(min ^ max) - DIGIT_BITS);
+
+      // Histogram of the current digit; flipping the sign bit makes the digits
+      // order like the signed keys.
+      Arrays.fill(counts, 0);
+      for ( int i = lo; i < lo + size; i++ ) {
+        counts[(int)(((key(a[i]) ^ Long.MIN_VALUE) >>> shift) & MASK)]++;
+      }
+
+      // Find the bucket that contains rank k
+      int b = 0;
+      int r = k - lo;
+      while ( r >= counts[b] ) {
+        r -= counts[b];
+        b++;
+      }
+
+      // Partition into smaller, equal and larger digits, and find the range of keys of the equal ones
+      int lt = lo;
+      int gt = lo + size - 1;
+      int i = lo;
+      min = Long.MAX_VALUE;
+      max = Long.MIN_VALUE;
+      while ( i <= gt ) {
+        final double x = a[i];
+        final long key = key(x);
+        final int digit = (int)(((key ^ Long.MIN_VALUE) >>> shift) & MASK);
+        if ( digit < b ) {
+          a[i++] = a[lt];
+          a[lt++] = x;
+        }
+        else if ( digit > b ) {
+          a[i] = a[gt];
+          a[gt--] = x;
+        }
+        else {
+          if ( key < min ) min = key;
+          if ( key > max ) max = key;
+          i++;
+        }
+      }
+      lo = lt;
+      size = gt - lt + 1;
+    }
+
+    return RankSelection.floydRivestSelect(a, lo, lo + size - 1, k);
+  }
+
+  /**
+   * Like {@link #select(double[], int, int)}, but on floats.
+   * Values must not be NaN.
+   */
+  public static float select(final float[] a, final int hi, int k) {
+    if ( hi >= a.length ) throw new IndexOutOfBoundsException("hi > a.length");
+    if ( k < 0 || k > hi ) {
+      throw new IndexOutOfBoundsException("Selected element out of bounds");
+    }
+
+    final int[] counts = COUNTS.get();
+    // Invariant as for doubles
+    int lo = 0;
+    int size = hi + 1;
+
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for ( int i = 0; i < size; i++ ) {
+      final int key = key(a[i]);
+      if ( key < min ) min = key;
+      if ( key > max ) max = key;
+    }
+
+    while ( min != max ) {
+      final int shift = Math.max(0, 32 - Integer.numberOfLeadingZeros(min ^ max) - DIGIT_BITS);
+
+      Arrays.fill(counts, 0);
+      for ( int i = lo; i < lo + size; i++ ) {
+        counts[((key(a[i]) ^ Integer.MIN_VALUE) >>> shift) & MASK]++;
+      }
+
+      int b = 0;
+      int r = k - lo;
+      while ( r >= counts[b] ) {
+        r -= counts[b];
+        b++;
+      }
+
+      int lt = lo;
+      int gt = lo + size - 1;
+      int i = lo;
+      min = Integer.MAX_VALUE;
+      max = Integer.MIN_VALUE;
+      while ( i <= gt ) {
+        final float x = a[i];
+        final int key = key(x);
+        final int digit = ((key ^ Integer.MIN_VALUE) >>> shift) & MASK;
+        if ( digit < b ) {
+          a[i++] = a[lt];
+          a[lt++] = x;
+        }
+        else if ( digit > b ) {
+          a[i] = a[gt];
+          a[gt--] = x;
+        }
+        else {
+          if ( key < min ) min = key;
+          if ( key > max ) max = key;
+          i++;
+        }
+      }
+      lo = lt;
+      size = gt - lt + 1;
+    }
+
+    // All remaining keys are equal
+    return a[k];
+  }
+}
@@ -15,17 +15,109 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package de.unikl.cs.agak.appportionment.util;
 
-import edu.princeton.cs.algs4.StdRandom;
-
 /**
  * Rank selection algorithms as seen in
  * <a href="http://algs4.cs.princeton.edu/23quicksort/QuickPedantic.java.html">QuickPedantic</a>
  * by <a href="http://algs4.cs.princeton.edu/code/">Sedgewick/Wayne</a>, 
  * but modified to run on primitive double[]
+ * <p/>
+ * Random choices are made by a generator seeded from the arguments of each call,
+ * not by a shared random source. Hence, selection is deterministic and
+ * can be used by many threads at once.
  *
  * @author Sebastian Wild (s_wild@cs.uni-kl.de)
  */
 public class RankSelection {
+	/**
+	 * A selection algorithm with the contract of {@link #select(double[], int, int)}.
+	 */
+	public interface Selector {
+		double select(double[] a, int hi, int k);
+	}
+
+	/**
+	 * Randomized quickselect, i.e. {@link #select(double[], int, int)}.
+	 */
+	public static final Selector QUICKSELECT = new Selector() {
+		@Override
+		public double select(double[] a, int hi, int k) {
+			return RankSelection.select(a, hi, k);
+		}
+
+		@Override
+		public String toString() {
+			return "QuickSelect";
+		}
+	};
+
+	/**
+	 * Floyd-Rivest selection, i.e. {@link #floydRivestSelect(double[], int, int)}.
+	 */
+	public static final Selector FLOYD_RIVEST = new Selector() {
+		@Override
+		public double select(double[] a, int hi, int k) {
+			return floydRivestSelect(a, hi, k);
+		}
+
+		@Override
+		public String toString() {
+			return "FloydRivest";
+		}
+	};
+
+	/**
+	 * Radix selection on bit patterns, i.e. {@link RadixSelection#select(double[], int, int)}.
+	 */
+	public static final Selector RADIX = new Selector() {
+		@Override
+		public double select(double[] a, int hi, int k) {
+			return RadixSelection.select(a, hi, k);
+		}
+
+		@Override
+		public String toString() {
+			return "Radix";
+		}
+	};
+
+	/**
+	 * A selection algorithm that also reports the band of elements equal to the
+	 * selected one; see {@link #threeWaySelect(double[], int, int, int[])}.
+	 */
+	public interface BandSelector extends Selector {
+		double select(double[] a, int hi, int k, int[] band);
+	}
+
+	/**
+	 * Three-way partitioning quickselect, i.e. {@link #threeWaySelect(double[], int, int, int[])}.
+	 */
+	public static final BandSelector THREE_WAY = new BandSelector() {
+		@Override
+		public double select(double[] a, int hi, int k) {
+			return threeWaySelect(a, hi, k, new int[3]);
+		}
+
+		@Override
+		public double select(double[] a, int hi, int k, int[] band) {
+			return threeWaySelect(a, hi, k, band);
+		}
+
+		@Override
+		public String toString() {
+			return "ThreeWay";
+		}
+	};
+
+	/**
+	 * Inputs of at most this size are partitioned without sampling first.
+	 */
+	private static final int FR_SAMPLING_THRESHOLD = 600;
+
+	/**
+	 * Increment of the SplitMix64 generator used for random choices.
+	 */
+	static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
 	public static double median(double[] a) {
 		return a.length == 1 ? a[0] : select(a, a.length / 2 - 1);
 	}
@@ -44,8 +136,8 @@ public class RankSelection {
 		if (k < 0 || k >= a.length) {
 			throw new IndexOutOfBoundsException("Selected element out of bounds");
 		}
-		StdRandom.shuffle(a);
 		int lo = 0, hi = a.length - 1;
+		shuffle(a, lo, hi, seed(a, hi, k));
 		while (hi > lo) {
 			int i = partition(a, lo, hi);
 			if (i > k) hi = i - 1;
@@ -64,11 +156,11 @@ public class RankSelection {
 	 */
 	public static double select(double[] a, int hi, int k) {
 		if (hi >= a.length) throw new IndexOutOfBoundsException("hi > a.length");
-		if (k < 0 || k >= hi) {
+		if (k < 0 || k > hi) {
 			throw new IndexOutOfBoundsException("Selected element out of bounds");
 		}
 		int lo = 0;
-		StdRandom.shuffle(a, 0, hi);
+		shuffle(a, lo, hi, seed(a, hi, k));
 		while (hi > lo) {
 			int i = partition(a, lo, hi);
 			if (i > k) hi = i - 1;
@@ -78,6 +170,277 @@ public class RankSelection {
 		return a[lo];
 	}
 
+	/**
+	 * Like {@link #select(double[], int, int)}, but uses the algorithm by
+	 * <dir>
+	 * Floyd, R. W. and Rivest, R. L.<br/>
+	 * Algorithm 489: The Algorithm SELECT for Finding the ith Smallest of n Elements<br/>
+	 * Communications of the ACM 18(3), 1975
+	 * </dir>
+	 * That is, pivots are taken from a small sample that is recursively selected from,
+	 * so that only few elements end up on the wrong side. No shuffling is needed.
+	 * <p/>
+	 * If the number of partitioning rounds exceeds a small multiple of <code>log(hi)</code>,
+	 * we fall back to {@link #medianOfMediansSelect(double[], int, int)};
+	 * hence the worst-case running time is linear.
+	 */
+	public static double floydRivestSelect(double[] a, int hi, int k) {
+		if (hi >= a.length) throw new IndexOutOfBoundsException("hi > a.length");
+		if (k < 0 || k > hi) {
+			throw new IndexOutOfBoundsException("Selected element out of bounds");
+		}
+		floydRivest(a, 0, hi, k, 4 * (32 - Integer.numberOfLeadingZeros(hi + 1)));
+		return a[k];
+	}
+
+	/**
+	 * Like {@link #floydRivestSelect(double[], int, int)}, but only rearranges
+	 * <code>a[lo .. hi]</code>; <code>k</code> is an index into <code>a</code>.
+	 */
+	static double floydRivestSelect(double[] a, int lo, int hi, int k) {
+		floydRivest(a, lo, hi, k, 4 * (32 - Integer.numberOfLeadingZeros(hi - lo + 1)));
+		return a[k];
+	}
+
+	// Rearranges a[left .. right] so that a[k] has its final position.
+	private static void floydRivest(double[] a, int left, int right, int k, int depth) {
+		while (right > left) {
+			if (--depth < 0) {
+				medianOfMedians(a, left, right, k);
+				return;
+			}
+
+			if (right - left > FR_SAMPLING_THRESHOLD) {
+				// Move a sample around position k into place recursively
+				final double n = right - left + 1;
+				final double i = k - left + 1;
+				final double z = Math.log(n);
+				final double s = 0.5 * Math.exp(2 * z / 3);
+				final double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * Math.signum(i - n / 2);
+				final int newLeft = Math.max(left, (int)(k - i * s / n + sd));
+				final int newRight = Math.min(right, (int)(k + (n - i) * s / n + sd));
+				floydRivest(a, newLeft, newRight, k, depth);
+			}
+
+			// Partition around t = a[k]
+			final double t = a[k];
+			int i = left;
+			int j = right;
+			exch(a, left, k);
+			if (less(t, a[right])) exch(a, right, left);
+			while (i < j) {
+				exch(a, i, j);
+				i++;
+				j--;
+				while (less(a[i], t)) i++;
+				while (less(t, a[j])) j--;
+			}
+			if (Double.compare(a[left], t) == 0) {
+				exch(a, left, j);
+			} else {
+				j++;
+				exch(a, j, right);
+			}
+
+			// a[left .. j-1] <= a[j] = t <= a[j+1 .. right]
+			if (j <= k) left = j + 1;
+			if (k <= j) right = j - 1;
+		}
+	}
+
+	/**
+	 * Like {@link #select(double[], int, int)}, but uses the deterministic
+	 * median-of-medians algorithm by Blum, Floyd, Pratt, Rivest and Tarjan.
+	 * Slow, but linear time in the worst case.
+	 */
+	public static double medianOfMediansSelect(double[] a, int hi, int k) {
+		if (hi >= a.length) throw new IndexOutOfBoundsException("hi > a.length");
+		if (k < 0 || k > hi) {
+			throw new IndexOutOfBoundsException("Selected element out of bounds");
+		}
+		medianOfMedians(a, 0, hi, k);
+		return a[k];
+	}
+
+	// Rearranges a[lo .. hi] so that a[k] has its final position.
+	private static void medianOfMedians(double[] a, int lo, int hi, int k) {
+		while (hi - lo >= 5) {
+			// Move medians of groups of five to the front
+			int m = lo;
+			for (int g = lo; g + 4 <= hi; g += 5) {
+				insertionSort(a, g, g + 4);
+				exch(a, m++, g + 2);
+			}
+
+			// Their median is the pivot
+			final int mid = lo + (m - lo - 1) / 2;
+			medianOfMedians(a, lo, m - 1, mid);
+			final double pivot = a[mid];
+
+			// Three-way partition a[lo .. hi] into < pivot, = pivot, > pivot
+			int lt = lo;
+			int i = lo;
+			int gt = hi;
+			while (i <= gt) {
+				if (less(a[i], pivot)) exch(a, lt++, i++);
+				else if (less(pivot, a[i])) exch(a, i, gt--);
+				else i++;
+			}
+
+			if (k < lt) hi = lt - 1;
+			else if (k > gt) lo = gt + 1;
+			else return;
+		}
+		insertionSort(a, lo, hi);
+	}
+
+	/**
+	 * Like {@link #select(double[], int, int)}, but partitions three-way (Dijkstra)
+	 * around random pivots. Runs of equal elements are thus removed in one round,
+	 * so inputs with many duplicates are handled in (expected) linear time, too.
+	 * <p/>
+	 * On return, <code>a[band[0] .. band[1]]</code> are exactly the elements equal to
+	 * the result, and <code>band[2]</code> is the number of elements in
+	 * <code>a[0 .. hi]</code> that are equal to the result up to
+	 * {@link FuzzyNumerics#EPSILON}, or <code>-1</code> if that number can not be
+	 * obtained from the last partitioning round alone.
+	 *
+	 * @param band Array of length at least three; receives the band around rank k.
+	 */
+	public static double threeWaySelect(double[] a, int hi, int k, int[] band) {
+		if (hi >= a.length) throw new IndexOutOfBoundsException("hi > a.length");
+		if (k < 0 || k > hi) {
+			throw new IndexOutOfBoundsException("Selected element out of bounds");
+		}
+
+		// All elements left of lo are at most left, all elements right of hi at least right.
+		double left = Double.NEGATIVE_INFINITY;
+		double right = Double.POSITIVE_INFINITY;
+		int lo = 0;
+		long random = seed(a, hi, k);
+		double pivot;
+		int lt;
+		int gt;
+		while (true) {
+			random += GOLDEN_GAMMA;
+			pivot = a[lo + uniform(mix(random), hi - lo + 1)];
+
+			// Three-way partition a[lo .. hi] into < pivot, = pivot, > pivot
+			lt = lo;
+			int i = lo;
+			gt = hi;
+			while (i <= gt) {
+				if (less(a[i], pivot)) exch(a, lt++, i++);
+				else if (less(pivot, a[i])) exch(a, i, gt--);
+				else i++;
+			}
+
+			if (k < lt) {
+				right = pivot;
+				hi = lt - 1;
+			} else if (k > gt) {
+				left = pivot;
+				lo = gt + 1;
+			} else break;
+		}
+
+		band[0] = lt;
+		band[1] = gt;
+		if (FuzzyNumerics.fuzzyEquals(left, pivot) || FuzzyNumerics.fuzzyEquals(right, pivot)) {
+			// Elements from earlier rounds may be close, too; we do not know.
+			band[2] = -1;
+		} else {
+			int close = gt - lt + 1;
+			for (int i = lo; i < lt; i++) {
+				if (FuzzyNumerics.fuzzyEquals(a[i], pivot)) close++;
+			}
+			for (int i = gt + 1; i <= hi; i++) {
+				if (FuzzyNumerics.fuzzyEquals(a[i], pivot)) close++;
+			}
+			band[2] = close;
+		}
+		return pivot;
+	}
+
+	/**
+	 * Selects several ranks at once: on return, <code>out[j]</code> is the element of
+	 * rank <code>ranks[j]</code> in <code>a[0 .. hi]</code>, for all <code>j</code>.
+	 * <p/>
+	 * Partitions three-way around random pivots, like {@link #threeWaySelect}, and
+	 * recurses into every part that contains requested ranks. Thus, <code>m</code>
+	 * ranks take expected time <code>O(n log m)</code> instead of <code>O(n m)</code>
+	 * for separate selections.
+	 *
+	 * @param ranks Ranks in ascending order; duplicates are allowed.
+	 * @param out   Array at least as long as <code>ranks</code>; receives the results.
+	 */
+	public static void multiSelect(double[] a, int hi, int[] ranks, double[] out) {
+		if (hi >= a.length) throw new IndexOutOfBoundsException("hi > a.length");
+		for (int j = 0; j < ranks.length; j++) {
+			if (ranks[j] < 0 || ranks[j] > hi) {
+				throw new IndexOutOfBoundsException("Selected element out of bounds");
+			}
+			if (j > 0 && ranks[j] < ranks[j - 1]) {
+				throw new IllegalArgumentException("Ranks must be in ascending order");
+			}
+		}
+		if (ranks.length > 0) {
+			multiSelect(a, 0, hi, ranks, 0, ranks.length - 1, out, seed(a, hi, ranks[0]));
+		}
+	}
+
+	// Resolves ranks[rlo .. rhi], all of which lie in a[lo .. hi]
+	private static void multiSelect(double[] a, int lo, int hi, int[] ranks, int rlo, int rhi,
+									double[] out, long random) {
+		while (true) {
+			if (hi - lo < 16) {
+				insertionSort(a, lo, hi);
+				for (int j = rlo; j <= rhi; j++) out[j] = a[ranks[j]];
+				return;
+			}
+
+			random += GOLDEN_GAMMA;
+			final double pivot = a[lo + uniform(mix(random), hi - lo + 1)];
+
+			// Three-way partition a[lo .. hi] into < pivot, = pivot, > pivot
+			int lt = lo;
+			int i = lo;
+			int gt = hi;
+			while (i <= gt) {
+				if (less(a[i], pivot)) exch(a, lt++, i++);
+				else if (less(pivot, a[i])) exch(a, i, gt--);
+				else i++;
+			}
+
+			// Ranks below, in and above the equal range
+			int below = rlo;
+			while (below <= rhi && ranks[below] < lt) below++;
+			int above = below;
+			while (above <= rhi && ranks[above] <= gt) out[above++] = pivot;
+
+			// Recurse into the side with fewer ranks, iterate on the other
+			if (below - rlo < rhi - above + 1) {
+				if (below > rlo) multiSelect(a, lo, lt - 1, ranks, rlo, below - 1, out, random);
+				if (above > rhi) return;
+				lo = gt + 1;
+				rlo = above;
+			} else {
+				if (above <= rhi) multiSelect(a, gt + 1, hi, ranks, above, rhi, out, random);
+				if (below == rlo) return;
+				hi = lt - 1;
+				rhi = below - 1;
+			}
+		}
+	}
+
+	private static void insertionSort(double[] a, int lo, int hi) {
+		for (int i = lo + 1; i <= hi; i++) {
+			for (int j = i; j > lo && less(a[j], a[j - 1]); j--) {
+				exch(a, j, j - 1);
+			}
+		}
+	}
+
 	// partition the subarray a[lo .. hi] by returning an index j
 	// so that a[lo .. j-1] <= a[j] <= a[j+1 .. hi]
 	private static int partition(double[] a, int lo, int hi) {
@@ -106,6 +469,33 @@ public class RankSelection {
 		return j;
 	}
 
+	/**
+	 * @return A seed for the random choices of a selection call with these arguments.
+	 */
+	static long seed(double[] a, int hi, int k) {
+		return mix(Double.doubleToRawLongBits(a[hi >>> 1]) ^ ((long) hi << 32) ^ k);
+	}
+
+	// SplitMix64 output function; turns a counter into well-distributed random bits.
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// Uniform in [0, bound), taken from the high bits of random.
+	static int uniform(long random, int bound) {
+		return (int) (((random >>> 33) * bound) >>> 31);
+	}
+
+	// Fisher-Yates shuffle of a[lo .. hi]
+	private static void shuffle(double[] a, int lo, int hi, long random) {
+		for (int i = lo; i < hi; i++) {
+			random += GOLDEN_GAMMA;
+			exch(a, i, i + uniform(mix(random), hi - i + 1));
+		}
+	}
+
 	private static boolean less(double v, double w) {
 		return Double.compare(v, w) < 0;
 	}